@@ -13,5 +13,5 @@ javac -d ./../bin/ -sourcepath ./../src/ ./../src/tsp/*.java
 for i in ./../instances/*.tsp;do
 	sleep 1;
 	echo "Executing instance ".$i
-	java -cp ./../bin/ tsp.Main -t 60 $i >> standardOutput.txt 2>> errorOutput.txt
+	java -cp ./../bin/ tsp.Main -c -t 60 $i >> standardOutput.txt 2>> errorOutput.txt
 done
\ No newline at end of file
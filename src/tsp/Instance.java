@@ -3,16 +3,32 @@ package tsp;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Locale;
-import java.util.Scanner;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import tsp.distance.ADistanceStore;
+import tsp.distance.Metric;
+import tsp.distance.OnTheFlyDistanceStore;
+import tsp.distance.PackedDistanceStore;
+import tsp.spatial.KdTree;
 
 /**
  * The Instance class allows to create an object that contains the data stored
  * in a tsp file. <br>
  * <br>
- * Only 2D EUCLIDEAN and GEOGRAPHICAL problems can be read, that is problems where the customer
+ * Symmetric problems of the TSPLib can be read: problems where the customer
  * coordinates are given and the distance between two customers is the euclidean
- * distance or the GEOGRAPHICAL one. <br>
+ * distance (EUC_2D or CEIL_2D), the pseudo-euclidean one (ATT) or the
+ * GEOGRAPHICAL one, and problems where the distances are given in the file
+ * (EXPLICIT, in any EDGE_WEIGHT_FORMAT). The type of the problem is read from
+ * the file. <br>
  * <br>
  * The class is created through its constructor that takes the data file as
  * parameter. The data file is read and the data are stored in the Instance
@@ -27,6 +43,27 @@ public class Instance {
 	// ----- ATTRIBUTS -------------
 	// -----------------------------
 
+	/** Suffix of the binary cache written next to the data file */
+	public static final String CACHE_SUFFIX = ".cache";
+
+	/** First bytes of a binary cache ("TSPC") */
+	private static final int CACHE_MAGIC = 0x54535043;
+
+	/** Version of the binary cache format, to increase when the format changes */
+	private static final int CACHE_VERSION = 3;
+
+	/** Default number of neighbors of each city in the candidate lists */
+	public static final int NB_NEIGHBORS = 10;
+
+	/** Distance mode: the distance matrix is built unless it does not fit in memory. */
+	public static final int DISTANCES_AUTO = 0;
+
+	/** Distance mode: the distance matrix is always built. */
+	public static final int DISTANCES_MATRIX = 1;
+
+	/** Distance mode: distances are computed from the coordinates when they are needed. */
+	public static final int DISTANCES_ON_THE_FLY = 2;
+
 	/** Number of cities. */
 	private int m_nbCities;
 
@@ -39,18 +76,46 @@ public class Instance {
 	/** Boolean for knowing if data are geographical */
 	private boolean m_isGeographic;
 
-	/** Cities labels (read from the TSP files). */
+	/** Distance function, one of the constants of {@link Metric} */
+	private int m_metric;
+
+	/** Longitudes in radians of each city, only for geographical data */
+	private double[] m_longRadian;
+
+	/** Latitudes in radians of each city, only for geographical data */
+	private double[] m_latRadian;
+
+	/** Cities labels (read from the TSP files), -1 when the label is not an integer. */
+	private int[] m_labelIds;
+
+	/** Cities labels that are not integers, null if all labels are integers. */
 	private String[] m_labels;
 
-	/** Distance matrix */
-	private long[][] m_distances;
+	/** Distances between cities (upper triangle of the distance matrix) */
+	private ADistanceStore m_distances;
 
 	/** TSP file from the Euclidean tsp files of the TSPLib that is loaded. */
 	private String m_fileName;
 	
-	/** Instance type */
+	/** Instance type: 1 if distances are given in the file (EXPLICIT), 0 otherwise */
 	private int m_typeInstance;
 
+	/** How distances are stored: #DISTANCES_AUTO, #DISTANCES_MATRIX or #DISTANCES_ON_THE_FLY */
+	private int m_distanceMode;
+
+	/** If true, the header of the file is printed on the error output while it is read */
+	private boolean m_echoHeader;
+
+	/**
+	 * Candidate lists: #m_neighbors[i*#m_nbNeighbors + r] is the (r+1)-th
+	 * nearest city of city i. They are computed for #NB_NEIGHBORS neighbors
+	 * when the instance is loaded.
+	 */
+	private int[] m_neighbors;
+
+	/** Number of neighbors of each city in #m_neighbors */
+	private int m_nbNeighbors;
+
 
 
 	// -----------------------------
@@ -62,18 +127,86 @@ public class Instance {
 	 * the read method to load the data file given as parameter.
 	 * 
 	 * @param fileName instance file
+	 * @param typeInstance 1 for an instance given by its distances, 0
+	 *        otherwise. It is only used when the file has no EDGE_WEIGHT_TYPE.
 	 * @throws IOException Returns an error when a problem is met reading the data file.
 	 */
 	public Instance(String fileName, int typeInstance) throws IOException {
+		this(fileName, typeInstance, DISTANCES_AUTO);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName instance file
+	 * @param typeInstance 1 for an instance given by its distances, 0
+	 *        otherwise. It is only used when the file has no EDGE_WEIGHT_TYPE.
+	 * @param distanceMode how distances are stored: #DISTANCES_AUTO,
+	 *        #DISTANCES_MATRIX or #DISTANCES_ON_THE_FLY. Instances given by
+	 *        their distances always use a matrix.
+	 * @throws IOException Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, int typeInstance, int distanceMode) throws IOException {
+		this(fileName, typeInstance, distanceMode, true);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * @param fileName instance file
+	 * @param typeInstance 1 for an instance given by its distances, 0
+	 *        otherwise. It is only used when the file has no EDGE_WEIGHT_TYPE.
+	 * @param distanceMode how distances are stored: #DISTANCES_AUTO,
+	 *        #DISTANCES_MATRIX or #DISTANCES_ON_THE_FLY. Instances given by
+	 *        their distances always use a matrix.
+	 * @param echoHeader if true, the header of the file is printed on the error output
+	 * @throws IOException Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, int typeInstance, int distanceMode, boolean echoHeader) throws IOException {
+		this(fileName, typeInstance, distanceMode, echoHeader, false);
+	}
+
+	/**
+	 * Constructor: this method creates an object of class Instance. It calls
+	 * the read method to load the data file given as parameter.
+	 * 
+	 * When useCache is true, the data are read from the binary file
+	 * fileName{@link #CACHE_SUFFIX} if it is up to date, that is if it was
+	 * written for a data file with the same size and modification time and
+	 * with the same parameters. Otherwise the data file is read and the binary
+	 * file is (re)written. The candidate lists of #NB_NEIGHBORS neighbors are
+	 * computed here, so that the solvers do not pay for them.
+	 * 
+	 * @param fileName instance file
+	 * @param typeInstance 1 for an instance given by its distances, 0
+	 *        otherwise. It is only used when the file has no EDGE_WEIGHT_TYPE.
+	 * @param distanceMode how distances are stored: #DISTANCES_AUTO,
+	 *        #DISTANCES_MATRIX or #DISTANCES_ON_THE_FLY. Instances given by
+	 *        their distances always use a matrix.
+	 * @param echoHeader if true, the header of the file is printed on the error output
+	 * @param useCache if true, the binary cache next to the data file is used
+	 * @throws IOException Returns an error when a problem is met reading the data file.
+	 */
+	public Instance(String fileName, int typeInstance, int distanceMode, boolean echoHeader, boolean useCache) throws IOException {
 		m_fileName = fileName;
 		m_typeInstance = typeInstance;
-		if(m_typeInstance == 1)
+		m_distanceMode = distanceMode;
+		m_echoHeader = echoHeader;
+		boolean upToDate = useCache && loadCache();
+		if(!upToDate)
 		{
-			parseEdgeInstance();
+			parse();
 		}
-		else
+		if(m_nbNeighbors < Math.min(NB_NEIGHBORS, m_nbCities - 1))
 		{
-			parse();
+			getNeighbors(NB_NEIGHBORS);
+			upToDate = false;
+		}
+		if(useCache && !upToDate)
+		{
+			saveCache();
 		}
 	}
 	
@@ -87,84 +220,85 @@ public class Instance {
 	 */
 	private void parse() throws IOException {
 
-		File mfile = new File(m_fileName);
-		if (!mfile.exists()) {
-			throw new IOException("The instance file : " + m_fileName + " does not exist.");
-		}
-		Scanner sc = new Scanner(mfile);
-
-		String line;
-		do
-		{
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("DIMENSION"));
+		TSPLibReader reader = new TSPLibReader(m_fileName);
+		reader.readHeader(m_echoHeader ? System.err : null);
 
-		Scanner lineSc = new Scanner(line);
-		lineSc.next();
-		if (!lineSc.hasNextInt()) {
-			lineSc.next();
-		}
-		m_nbCities = lineSc.nextInt();
+		m_nbCities = reader.getDimension();
 		m_x = new double[m_nbCities];
 		m_y = new double[m_nbCities];
-		m_labels = new String[m_nbCities];
-
-		do {
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("EDGE_WEIGHT_TYPE"));
+		m_labelIds = new int[m_nbCities];
 
-		if (line.endsWith("GEO")){
-			m_isGeographic = true;
-		}
-		else if (line.endsWith("EUC_2D")){
-			m_isGeographic = false;
+		String type = reader.getEdgeWeightType();
+		m_metric = Metric.fromName(type);
+		if (m_metric < 0) {
+			if (type == null && m_typeInstance == 1) {
+				m_metric = Metric.EXPLICIT;
+			} else {
+				System.err.println("Distance is not handled");
+				m_metric = Metric.EUC_2D;
+			}
 		}
-		else{
-			System.err.println("Distance is not handled");
+		m_isGeographic = m_metric == Metric.GEO;
+
+		if (m_metric == Metric.EXPLICIT) {
+			m_typeInstance = 1;
+			if (!"EDGE_WEIGHT_SECTION".equals(reader.getSection())) {
+				throw new IOException("No EDGE_WEIGHT_SECTION found in " + m_fileName);
+			}
+			parseEdgeInstance(reader);
+		} else {
+			m_typeInstance = 0;
+			if (!"NODE_COORD_SECTION".equals(reader.getSection())) {
+				throw new IOException("No NODE_COORD_SECTION found in " + m_fileName);
+			}
+			parseCoordinates(reader);
 		}
-		line = sc.nextLine();
-		line = sc.nextLine();
+	}
 
-		int index = 0;
-		while ((!line.startsWith("EOF")) && (sc.hasNext())) {
-			if(index > m_nbCities)
-			{
-				System.exit(1);
+	/**
+	 * Reads the coordinates of the cities and computes the distances.
+	 * @param reader the reader, positioned at the beginning of the NODE_COORD_SECTION
+	 */
+	private void parseCoordinates(TSPLibReader reader) throws IOException {
+		for (int index = 0; index < m_nbCities; index++) {
+			if (reader.atEOF()) {
+				throw new IOException("The instance file : " + m_fileName + " contains " + index
+						+ " cities instead of " + m_nbCities + ".");
 			}
-			// System.out.println(line);
-			lineSc = new Scanner(line);
-			lineSc.useLocale(Locale.US);
-			m_labels[index] = lineSc.next();
-			m_x[index] = lineSc.nextDouble();
-			m_y[index] = lineSc.nextDouble();
-			line = sc.nextLine();
-			index++;
+			m_labelIds[index] = readLabel(reader, index);
+			m_x[index] = reader.nextDouble();
+			m_y[index] = reader.nextDouble();
 		}
 
-		// Create the distance matrix
-		m_distances = new long[m_nbCities][];
-		for (int i = 0; i < m_nbCities; i++) {
-			m_distances[i] = new long[m_nbCities];
+		if (m_isGeographic)
+		{
+			m_longRadian = new double[m_nbCities];
+			m_latRadian = new double[m_nbCities];
+			for (int i = 0; i < m_nbCities; i++) {
+				m_longRadian[i] = Metric.toRadian(m_x[i]);
+				m_latRadian[i] = Metric.toRadian(m_y[i]);
+			}
 		}
 
-		// Compute distances
-		for (int i = 0; i < m_nbCities; i++) {
-			m_distances[i][i] = 0;
-			for (int j = i + 1; j < m_nbCities; j++) {
-				long dist = -1;
-				if (m_isGeographic)
-				{
-					dist = geoDist(i,j); 
-				}
-				else
-				{
-					dist = distance(i, j);
-				}
-				m_distances[i][j] = dist;
-				m_distances[j][i] = dist;
+		if (useOnTheFlyDistances())
+		{
+			if (m_isGeographic)
+			{
+				m_distances = new OnTheFlyDistanceStore(m_longRadian, m_latRadian, Metric.GEO);
 			}
+			else
+			{
+				m_distances = new OnTheFlyDistanceStore(m_x, m_y, m_metric);
+			}
+		}
+		else
+		{
+			// Create the distance matrix
+			PackedDistanceStore distances = new PackedDistanceStore(m_nbCities, getMaxDistanceBound());
+
+			// Compute distances, in parallel over blocks of rows
+			ForkJoinPool.commonPool().invoke(new DistanceTask(distances, 0, m_nbCities));
+			m_distances = distances;
 		}
 		
 		if(m_isGeographic)
@@ -178,72 +312,289 @@ public class Instance {
 			}
 		}
 
-		sc.close();
-		lineSc.close();
 	}
 	
 	/**
-	 * Parse the input file to construct Instance		
+	 * Reads the distances given in the EDGE_WEIGHT_SECTION. Each weight is
+	 * stored in the packed distance matrix as soon as it is read, so no other
+	 * matrix is built. The file gives the whole matrix, or one of its
+	 * triangles row by row or column by column (with or without its
+	 * diagonal). As the problem is symmetric, a column-wise triangle is the
+	 * other row-wise triangle, and only the upper triangle of a full matrix is
+	 * kept.
+	 * 
+	 * @param reader the reader, positioned at the beginning of the EDGE_WEIGHT_SECTION
 	 */
-	private void parseEdgeInstance() throws IOException {
+	private void parseEdgeInstance(TSPLibReader reader) throws IOException {
 
-		File mfile = new File(m_fileName);
-		if (!mfile.exists()) {
-			throw new IOException("The instance file : " + m_fileName + " does not exist.");
+		// Create the distance matrix, it is widened if a distance does not fit on 16 bits
+		PackedDistanceStore distances = new PackedDistanceStore(m_nbCities, 0);
+		for (int i = 0; i < m_nbCities; i++) {
+			m_labelIds[i] = i;
 		}
-		Scanner sc = new Scanner(mfile);
+		
+		String format = reader.getEdgeWeightFormat();
+		if (format == null) {
+			format = "UPPER_ROW";
+		}
+		switch (format) {
+		case "FULL_MATRIX":
+			for (int i = 0; i < m_nbCities; i++) {
+				for (int j = 0; j < m_nbCities; j++) {
+					long dist = reader.nextLong();
+					if (j > i) {
+						distances.set(i, j, dist);
+					}
+				}
+			}
+			break;
+		case "UPPER_ROW":
+		case "LOWER_COL":
+			for (int i = 0; i < m_nbCities; i++) {
+				for (int j = i + 1; j < m_nbCities; j++) {
+					distances.set(i, j, reader.nextLong());
+				}
+			}
+			break;
+		case "LOWER_ROW":
+		case "UPPER_COL":
+			for (int i = 0; i < m_nbCities; i++) {
+				for (int j = 0; j < i; j++) {
+					distances.set(i, j, reader.nextLong());
+				}
+			}
+			break;
+		case "UPPER_DIAG_ROW":
+		case "LOWER_DIAG_COL":
+			for (int i = 0; i < m_nbCities; i++) {
+				reader.nextLong();
+				for (int j = i + 1; j < m_nbCities; j++) {
+					distances.set(i, j, reader.nextLong());
+				}
+			}
+			break;
+		case "LOWER_DIAG_ROW":
+		case "UPPER_DIAG_COL":
+			for (int i = 0; i < m_nbCities; i++) {
+				for (int j = 0; j < i; j++) {
+					distances.set(i, j, reader.nextLong());
+				}
+				reader.nextLong();
+			}
+			break;
+		default:
+			throw new IOException("EDGE_WEIGHT_FORMAT " + format + " is not handled.");
+		}
+		m_distances = distances;
+	}
 
-		String line;
-		do
-		{
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("DIMENSION"));
+	/**
+	 * Reads the label of a city. Integer labels are kept as int, other labels
+	 * are stored in #m_labels.
+	 * 
+	 * @param reader the reader, positioned before the label
+	 * @param index the city number
+	 * @return the label, or -1 if it is not an integer
+	 * @throws IOException if the end of the file is reached
+	 */
+	private int readLabel(TSPLibReader reader, int index) throws IOException {
+		int label = reader.nextLabel();
+		if (label < 0) {
+			if (m_labels == null) {
+				m_labels = new String[m_nbCities];
+			}
+			m_labels[index] = reader.lastToken();
+		}
+		return label;
+	}
 
-		Scanner lineSc = new Scanner(line);
-		lineSc.next();
-		if (!lineSc.hasNextInt()) {
-			lineSc.next();
+	/**
+	 * Loads the instance from its binary cache. The cache file is mapped in
+	 * memory and each array is copied from it in one bulk operation.
+	 * 
+	 * The cache contains, in this order (little endian): a header (magic
+	 * number, version, size and modification time of the data file, metric,
+	 * storage of the distances, number of cities, greatest distance), the
+	 * coordinates, the radians for geographical data, the labels, the
+	 * entries of the packed distance matrix if there is one and the candidate
+	 * lists if they have been computed.
+	 * 
+	 * @return `true` if the cache was loaded, `false` if it is missing, out of
+	 *         date or written with other parameters.
+	 */
+	private boolean loadCache() {
+		File source = new File(m_fileName);
+		File cache = new File(m_fileName + CACHE_SUFFIX);
+		if (!source.exists() || !cache.exists()) {
+			return false;
 		}
-		m_nbCities = lineSc.nextInt();
-		m_x = new double[m_nbCities];
-		m_y = new double[m_nbCities];
-		m_labels = new String[m_nbCities];
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				return false;
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+					|| buffer.getLong() != source.length() || buffer.getLong() != source.lastModified()) {
+				return false;
+			}
+			m_metric = buffer.get();
+			m_isGeographic = m_metric == Metric.GEO;
+			m_typeInstance = m_metric == Metric.EXPLICIT ? 1 : 0;
+			int storage = buffer.get();
+			int nbCities = buffer.getInt();
+			long maxDistance = buffer.getLong();
+			boolean onTheFly = storage == 0;
 
-		do {
-			line = sc.nextLine();
-			System.err.println(line);
-		} while (!line.startsWith("EDGE_WEIGHT_SECTION"));
+			m_nbCities = nbCities;
+			m_x = new double[m_nbCities];
+			m_y = new double[m_nbCities];
+			m_labelIds = new int[m_nbCities];
+			readDoubles(buffer, m_x);
+			readDoubles(buffer, m_y);
+			if (m_typeInstance != 1 && onTheFly != useOnTheFlyDistances()) {
+				return false;
+			}
+			if (m_isGeographic) {
+				m_longRadian = new double[m_nbCities];
+				m_latRadian = new double[m_nbCities];
+				readDoubles(buffer, m_longRadian);
+				readDoubles(buffer, m_latRadian);
+			}
+			buffer.asIntBuffer().get(m_labelIds);
+			buffer.position(buffer.position() + 4 * m_nbCities);
+			for (int i = 0; i < m_nbCities; i++) {
+				if (m_labelIds[i] < 0) {
+					if (m_labels == null) {
+						m_labels = new String[m_nbCities];
+					}
+					byte[] bytes = new byte[buffer.getInt()];
+					buffer.get(bytes);
+					m_labels[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			}
 
+			if (onTheFly) {
+				if (m_isGeographic) {
+					m_distances = new OnTheFlyDistanceStore(m_longRadian, m_latRadian, Metric.GEO);
+				} else {
+					m_distances = new OnTheFlyDistanceStore(m_x, m_y, m_metric);
+				}
+			} else {
+				PackedDistanceStore distances = new PackedDistanceStore(m_nbCities, maxDistance);
+				distances.readFrom(buffer);
+				m_distances = distances;
+			}
+			int nbNeighbors = buffer.getInt();
+			if (nbNeighbors > 0) {
+				m_neighbors = new int[m_nbCities * nbNeighbors];
+				buffer.asIntBuffer().get(m_neighbors);
+				m_nbNeighbors = nbNeighbors;
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Warning: the cache " + cache + " cannot be read (" + e + "), the data file is read.");
+			return false;
+		}
+	}
 
-		int index = 0;
+	/**
+	 * Writes the binary cache of the instance next to the data file (see
+	 * {@link #loadCache()}). The cache is written in a temporary file which is
+	 * then renamed, so that a run never reads a partially written cache. If the
+	 * cache cannot be written, a warning is printed and the run goes on.
+	 */
+	private void saveCache() {
+		File source = new File(m_fileName);
+		File cache = new File(m_fileName + CACHE_SUFFIX);
+		PackedDistanceStore packed = (m_distances instanceof PackedDistanceStore) ? (PackedDistanceStore) m_distances : null;
 
-		// Create the distance matrix
-		m_distances = new long[m_nbCities][];
+		byte[][] labels = new byte[m_nbCities][];
+		long size = 4 + 4 + 8 + 8 + 1 + 1 + 4 + 8;
+		size += 8L * m_nbCities * (m_isGeographic ? 4 : 2) + 4L * m_nbCities;
 		for (int i = 0; i < m_nbCities; i++) {
-			m_distances[i] = new long[m_nbCities];
-			m_x[i] = 0;
-			m_x[i] = 0;
-			m_labels[i] = Integer.toString(i);
+			if (m_labelIds[i] < 0) {
+				labels[i] = m_labels[i].getBytes(StandardCharsets.UTF_8);
+				size += 4 + labels[i].length;
+			}
 		}
-		
-		line = sc.nextLine();
-		// Compute distances
-		for (int i = 0; i < m_nbCities-1; i++) {
-			m_distances[i][i] = 0;
-			lineSc = new Scanner(line);
-			lineSc.useLocale(Locale.US);
-			for (int j = i + 1; j < m_nbCities; j++) {
-				long dist = lineSc.nextInt();
-//				System.out.println(dist);
-				m_distances[i][j] = dist;
-				m_distances[j][i] = dist;
+		if (packed != null) {
+			size += packed.getDataBytes();
+		}
+		size += 4 + 4L * m_nbCities * m_nbNeighbors;
+		if (size > Integer.MAX_VALUE) {
+			return;
+		}
+
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(source.getName(), ".tmp", source.getAbsoluteFile().getParentFile());
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+					FileChannel channel = raf.getChannel()) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(CACHE_MAGIC);
+				buffer.putInt(CACHE_VERSION);
+				buffer.putLong(source.length());
+				buffer.putLong(source.lastModified());
+				buffer.put((byte) m_metric);
+				buffer.put((byte) (packed == null ? 0 : (packed.isWide() ? 2 : 1)));
+				buffer.putInt(m_nbCities);
+				buffer.putLong(packed == null || packed.isWide() ? Integer.MAX_VALUE : PackedDistanceStore.MAX_NARROW);
+				writeDoubles(buffer, m_x);
+				writeDoubles(buffer, m_y);
+				if (m_isGeographic) {
+					writeDoubles(buffer, m_longRadian);
+					writeDoubles(buffer, m_latRadian);
+				}
+				buffer.asIntBuffer().put(m_labelIds);
+				buffer.position(buffer.position() + 4 * m_nbCities);
+				for (int i = 0; i < m_nbCities; i++) {
+					if (labels[i] != null) {
+						buffer.putInt(labels[i].length);
+						buffer.put(labels[i]);
+					}
+				}
+				if (packed != null) {
+					packed.writeTo(buffer);
+				}
+				buffer.putInt(m_nbNeighbors);
+				if (m_nbNeighbors > 0) {
+					buffer.asIntBuffer().put(m_neighbors);
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Warning: the cache " + cache + " cannot be written (" + e + ").");
+			if (tmp != null) {
+				tmp.delete();
 			}
-			line = sc.nextLine();
 		}
+	}
 
-		sc.close();
-		lineSc.close();
+	/**
+	 * Copies doubles from the position of the buffer, and moves the position after them.
+	 * @param buffer the buffer
+	 * @param array the array to fill
+	 */
+	private static void readDoubles(ByteBuffer buffer, double[] array) {
+		buffer.asDoubleBuffer().get(array);
+		buffer.position(buffer.position() + 8 * array.length);
+	}
+
+	/**
+	 * Copies doubles at the position of the buffer, and moves the position after them.
+	 * @param buffer the buffer
+	 * @param array the array to write
+	 */
+	private static void writeDoubles(ByteBuffer buffer, double[] array) {
+		buffer.asDoubleBuffer().put(array);
+		buffer.position(buffer.position() + 8 * array.length);
 	}
 
 	/**
@@ -253,31 +604,58 @@ public class Instance {
 	 * @return the geographical distance between i and j 
 	 */
 	private long geoDist(int i, int j) {
+		return Metric.geographic(m_longRadian[i], m_latRadian[i], m_longRadian[j], m_latRadian[j]);
+	}
 
-		double PI = 3.141592;
-		double longRadianI = PI*m_x[i]/180.0;
-		double latRadianI = PI*m_y[i]/180.0;
-		double longRadianJ = PI*m_x[j]/180.0;
-		double latRadianJ = PI*m_y[j]/180.0;
-		double RRR = 6378.388;
-		double q1 = Math.cos(longRadianI - longRadianJ);
-		double q2 = Math.cos(latRadianI - latRadianJ);
-		double q3 = Math.cos(latRadianI + latRadianJ);
-
-		int res = (int) (RRR*Math.acos(0.5*((1.0+q1)*q2-(1.0-q1)*q3))+1.0);
-		return res;
+	/**
+	 * Computes an upper bound of the distances of the instance, used to choose
+	 * the size of the entries of the distance store. 
+	 * @return an upper bound of the distance between two cities
+	 */
+	private long getMaxDistanceBound() {
+		if (m_isGeographic) {
+			// Half of the circumference of the earth
+			return (long) (6378.388 * Math.PI) + 2;
+		}
+		double diagonal = Math.hypot(getMaxX() - getMinX(), getMaxY() - getMinY());
+		if (m_metric == Metric.ATT) {
+			return (long) Math.ceil(diagonal / Math.sqrt(10.0)) + 1;
+		}
+		return (long) Math.ceil(diagonal) + 1;
 	}
 
 	/**
 	 * 
 	 * @param i the first index
 	 * @param j the second index
-	 * @return the euclidian distance between i and j 
+	 * @return the distance between i and j computed from their coordinates
+	 *         (euclidean, ceiling euclidean or pseudo-euclidean)
 	 */
-	private long distance(int i, int j) {
-		double dx = m_x[i] - m_x[j];
-		double dy = m_y[i] - m_y[j];
-		return (long) Math.rint(Math.hypot(dx, dy));
+	private long coordinateDistance(int i, int j) {
+		return Metric.distance(m_metric, m_x[i], m_y[i], m_x[j], m_y[j]);
+	}
+
+	/**
+	 * Chooses between the distance matrix and distances computed on the fly.
+	 * In #DISTANCES_AUTO mode, the matrix is not built when it has too many
+	 * entries for a single array or would take more than half of the memory
+	 * available to the JVM.
+	 * 
+	 * @return `true` if distances should be computed on the fly
+	 */
+	private boolean useOnTheFlyDistances() {
+		if (m_metric == Metric.EXPLICIT) {
+			return false;
+		}
+		if (m_distanceMode != DISTANCES_AUTO) {
+			return m_distanceMode == DISTANCES_ON_THE_FLY;
+		}
+		if (m_nbCities > PackedDistanceStore.MAX_CITIES) {
+			return true;
+		}
+		long entryBytes = getMaxDistanceBound() <= PackedDistanceStore.MAX_NARROW ? 2 : 4;
+		long matrixBytes = entryBytes * m_nbCities * (m_nbCities - 1L) / 2;
+		return matrixBytes > Runtime.getRuntime().maxMemory() / 2;
 	}
 
 	/**
@@ -354,7 +732,7 @@ public class Instance {
 		out.println("Distance matrix:");
 		for (int i = 0; i < m_nbCities; i++) {
 			for (int j = 0; j < m_nbCities; j++) {
-				out.print(m_distances[i][j] + ";");
+				out.print(m_distances.get(i, j) + ";");
 			}
 			out.println();
 		}
@@ -423,13 +801,18 @@ public class Instance {
 		if((i < 0) || (i >= m_nbCities)) {
 			throw new Exception("Error : city index " + i + " should range between 0 and " + (m_nbCities - 1) + ".");
 		}
-		return m_labels[i];
+		if (m_labelIds[i] < 0) {
+			return m_labels[i];
+		}
+		return Integer.toString(m_labelIds[i]);
 	}
 
 	/**
 	 * Returns the euclidean distance rounded to the nearest integer value
 	 * between two cities. All distances are calculated when the tsp file is
-	 * loaded, so this function does not calculate distances. Note: problems are
+	 * loaded and stored in a packed triangular array, so this function does
+	 * not calculate distances, unless the instance is too large for the
+	 * matrix (see #DISTANCES_ON_THE_FLY). Note: problems are
 	 * symmetric, the distance from city i to city j is equal to the
 	 * distance from j to i.
 	 * 
@@ -446,23 +829,350 @@ public class Instance {
 		if((j < 0) || (j >= m_nbCities)) {
 			throw new Exception("Error : city index " + j + " should range between 0 and " + (m_nbCities - 1) + ".");
 		}
-		return m_distances[i][j];
+		return m_distances.get(i, j);
 	}
 
 	/**
+	 * Returns the distance between cities i and j, without checking the
+	 * indices. This is the accessor to use in loops: it throws no checked
+	 * exception and is small enough to be inlined. The indices are checked
+	 * only when assertions are enabled (java -ea), see
+	 * {@link #getDistances(int, int)} for the checked version.
+	 * 
+	 * @param i origin city (between 0 and nbcity-1).
+	 * @param j destination city (between 0 and nbcity-1).
+	 * @return the distance from i to j
+	 */
+	public long distance(int i, int j) {
+		assert i >= 0 && i < m_nbCities && j >= 0 && j < m_nbCities : "city index out of range: " + i + ", " + j;
+		return m_distances.get(i, j);
+	}
+
+	/**
+	 * Builds the whole distance matrix. Distances are not stored this way, so
+	 * this method allocates nbCities*nbCities longs: prefer
+	 * {@link #getDistances(int, int)} on large instances.
+	 * 
 	 * @return Returns the whole distance matrix.
 	 */
 	public long[][] getDistances() {
+		long[][] matrix = new long[m_nbCities][m_nbCities];
+		for (int i = 0; i < m_nbCities; i++) {
+			for (int j = i + 1; j < m_nbCities; j++) {
+				matrix[i][j] = m_distances.get(i, j);
+				matrix[j][i] = matrix[i][j];
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return Returns the store holding the distances.
+	 */
+	public ADistanceStore getDistanceStore() {
 		return m_distances;
 	}
 
+	/**
+	 * Returns the candidate lists of the cities: the k nearest cities of each
+	 * city, sorted by increasing distance (ties are broken by city number).
+	 * The lists of #NB_NEIGHBORS neighbors are computed, in parallel, when the
+	 * instance is loaded and kept in its binary cache; asking for more
+	 * neighbors recomputes them (but does not rewrite the cache). For
+	 * euclidean instances they are computed with a k-d tree in O(n log n),
+	 * otherwise all pairs are looked at. The result must not be modified.
+	 * 
+	 * Asking for more neighbors than {@link #getNbNeighbors()} changes the
+	 * layout read by {@link #getNeighbor(int, int)}: it must not be done while
+	 * another thread reads the candidate lists.
+	 * 
+	 * @param k number of neighbors of each city, at most nbCities-1
+	 * @return an array of size nbCities*k where the element i*k + r is the
+	 *         (r+1)-th nearest city of city i
+	 */
+	public synchronized int[] getNeighbors(int k) {
+		k = Math.max(0, Math.min(k, m_nbCities - 1));
+		if (m_neighbors == null || k > m_nbNeighbors) {
+			int[] neighbors = new int[m_nbCities * k];
+			ForkJoinPool.commonPool().invoke(new NeighborTask(neighbors, k, newSpatialIndex(), 0, m_nbCities));
+			m_neighbors = neighbors;
+			m_nbNeighbors = k;
+		}
+		if (k == m_nbNeighbors) {
+			return m_neighbors;
+		}
+		int[] neighbors = new int[m_nbCities * k];
+		for (int i = 0; i < m_nbCities; i++) {
+			System.arraycopy(m_neighbors, i * m_nbNeighbors, neighbors, i * k, k);
+		}
+		return neighbors;
+	}
+
+	/**
+	 * @param city a city
+	 * @param rank a rank between 0 and {@link #getNbNeighbors()}-1, the
+	 *        largest number of neighbors computed so far
+	 * @return the (rank+1)-th nearest city of city
+	 */
+	public int getNeighbor(int city, int rank) {
+		return m_neighbors[city * m_nbNeighbors + rank];
+	}
+
+	/**
+	 * @return the number of neighbors of each city in the candidate lists, 0
+	 *         if they have not been computed
+	 */
+	public int getNbNeighbors() {
+		return m_nbNeighbors;
+	}
+
+	/**
+	 * @return `true` if the distance between two cities is a non-decreasing
+	 *         function of the euclidean distance between their coordinates, so
+	 *         that a spatial index over the coordinates can be used
+	 */
+	public boolean isEuclidean() {
+		return m_metric == Metric.EUC_2D || m_metric == Metric.CEIL_2D || m_metric == Metric.ATT;
+	}
+
+	/**
+	 * Gives the euclidean radius to search around a city to find all the
+	 * cities at a given distance, for euclidean instances.
+	 * 
+	 * @param distance a distance between cities
+	 * @return the greatest euclidean distance between coordinates that can
+	 *         give a distance lower or equal to distance
+	 */
+	public double getEuclideanRadius(long distance) {
+		double radius;
+		if (m_metric == Metric.CEIL_2D) {
+			radius = distance;
+		} else if (m_metric == Metric.ATT) {
+			// The pseudo-euclidean distance is at least the euclidean distance divided by sqrt(10)
+			radius = distance * Math.sqrt(10.0);
+		} else {
+			radius = distance + 0.5;
+		}
+		// A small margin covers the rounding of the square roots
+		return radius * (1 + 1e-12) + 1e-9;
+	}
+
+	/**
+	 * Builds a spatial index over the coordinates of the cities. Each call
+	 * builds a new index (in O(n log n)), whose removed cities are independent
+	 * of the other indexes.
+	 * 
+	 * @return a k-d tree over the coordinates, null if the instance is not
+	 *         euclidean (see {@link #isEuclidean()})
+	 */
+	public KdTree newSpatialIndex() {
+		if (!isEuclidean()) {
+			return null;
+		}
+		return new KdTree(m_x, m_y);
+	}
+
+	/**
+	 * @return the distance function, one of the constants of {@link Metric}
+	 */
+	public int getMetric() {
+		return m_metric;
+	}
+
+	/**
+	 * @return `true` if distances are computed when they are needed instead of being stored
+	 */
+	public boolean isOnTheFly() {
+		return m_distances instanceof OnTheFlyDistanceStore;
+	}
+
 	/**
 	 * @return Return the name of the instance file.
 	 */
 	public String getFileName() {
 		return m_fileName;
 	}
-	
-	
 
+
+	/**
+	 * Fork-join task that computes the distances of the rows [#m_firstRow, #m_lastRow[
+	 * of the upper triangle of the distance matrix. The rows are split in two
+	 * blocks holding the same number of pairs until a block is small enough.
+	 * A block is then computed by tiles of #TILE columns, so that the
+	 * coordinates of the tile stay in the cache while its rows are computed.
+	 */
+	private class DistanceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Greatest number of pairs computed by a task without splitting it */
+		private static final long THRESHOLD = 1 << 16;
+
+		/** Number of columns of a tile */
+		private static final int TILE = 1024;
+
+		/** The store to fill */
+		private final PackedDistanceStore m_store;
+
+		/** First row of the block */
+		private final int m_firstRow;
+
+		/** Row following the last row of the block */
+		private final int m_lastRow;
+
+		private DistanceTask(PackedDistanceStore store, int firstRow, int lastRow) {
+			m_store = store;
+			m_firstRow = firstRow;
+			m_lastRow = lastRow;
+		}
+
+		@Override
+		protected void compute() {
+			long pairs = 0;
+			for (int i = m_firstRow; i < m_lastRow; i++) {
+				pairs += m_nbCities - 1 - i;
+			}
+			if (pairs <= THRESHOLD || m_lastRow - m_firstRow < 2) {
+				computeBlock();
+				return;
+			}
+			// Split where half of the pairs are reached
+			long half = 0;
+			int middle = m_firstRow;
+			while (middle < m_lastRow - 1 && 2 * half < pairs) {
+				half += m_nbCities - 1 - middle;
+				middle++;
+			}
+			invokeAll(new DistanceTask(m_store, m_firstRow, middle), new DistanceTask(m_store, middle, m_lastRow));
+		}
+
+		/**
+		 * Computes the distances of the block, tile by tile.
+		 */
+		private void computeBlock() {
+			for (int firstColumn = m_firstRow + 1; firstColumn < m_nbCities; firstColumn += TILE) {
+				int lastColumn = Math.min(m_nbCities, firstColumn + TILE);
+				for (int i = m_firstRow; i < m_lastRow && i < lastColumn; i++) {
+					for (int j = Math.max(i + 1, firstColumn); j < lastColumn; j++) {
+						long dist = -1;
+						if (m_isGeographic)
+						{
+							dist = geoDist(i,j); 
+						}
+						else
+						{
+							dist = coordinateDistance(i, j);
+						}
+						m_store.set(i, j, dist);
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Fork-join task that computes the candidate lists of the cities
+	 * [#m_first, #m_last[. For each city, the k nearest cities seen so far are
+	 * kept sorted by insertion.
+	 * 
+	 * Without spatial index all the cities are looked at. With a k-d tree, the k
+	 * nearest cities for the euclidean distance give the distance d of the k-th
+	 * neighbor, then only the cities in the disc of radius
+	 * {@link #getEuclideanRadius(long) getEuclideanRadius(d)} are looked at, so
+	 * that ties are broken exactly as without index.
+	 */
+	private class NeighborTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Greatest number of cities handled by a task without splitting it */
+		private static final int THRESHOLD = 64;
+
+		/** The candidate lists to fill */
+		private final int[] m_lists;
+
+		/** Number of neighbors of each city */
+		private final int m_k;
+
+		/** Spatial index over the cities, null if the instance is not euclidean */
+		private final KdTree m_tree;
+
+		/** First city of the task */
+		private final int m_first;
+
+		/** City following the last city of the task */
+		private final int m_last;
+
+		/** Distances of the kept neighbors of the current city */
+		private long[] m_dist;
+
+		/** Number of kept neighbors of the current city */
+		private int m_size;
+
+		private NeighborTask(int[] lists, int k, KdTree tree, int first, int last) {
+			m_lists = lists;
+			m_k = k;
+			m_tree = tree;
+			m_first = first;
+			m_last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (m_last - m_first <= THRESHOLD) {
+				if (m_k == 0) {
+					return;
+				}
+				m_dist = new long[m_k];
+				int[] nearest = new int[m_k];
+				double[] euclidean = new double[m_k];
+				for (int i = m_first; i < m_last; i++) {
+					m_size = 0;
+					if (m_tree == null) {
+						for (int j = 0; j < m_nbCities; j++) {
+							offer(i, j);
+						}
+					} else {
+						int found = m_tree.kNearest(i, m_k, nearest, euclidean);
+						long radius = 0;
+						for (int r = 0; r < found; r++) {
+							radius = Math.max(radius, m_distances.get(i, nearest[r]));
+						}
+						final int city = i;
+						m_tree.range(i, getEuclideanRadius(radius), j -> offer(city, j));
+					}
+				}
+				return;
+			}
+			int middle = (m_first + m_last) >>> 1;
+			invokeAll(new NeighborTask(m_lists, m_k, m_tree, m_first, middle),
+					new NeighborTask(m_lists, m_k, m_tree, middle, m_last));
+		}
+
+		/**
+		 * Inserts city j in the candidate list of city i if it is one of the k
+		 * nearest cities seen so far.
+		 * @param i the city
+		 * @param j the candidate
+		 */
+		private void offer(int i, int j) {
+			if (j == i) {
+				return;
+			}
+			int offset = i * m_k;
+			long d = m_distances.get(i, j);
+			if (m_size == m_k && (d > m_dist[m_k - 1] || (d == m_dist[m_k - 1] && j > m_lists[offset + m_k - 1]))) {
+				return;
+			}
+			int r = m_size < m_k ? m_size++ : m_k - 1;
+			while (r > 0 && (m_dist[r - 1] > d || (m_dist[r - 1] == d && m_lists[offset + r - 1] > j))) {
+				m_dist[r] = m_dist[r - 1];
+				m_lists[offset + r] = m_lists[offset + r - 1];
+				r--;
+			}
+			m_dist[r] = d;
+			m_lists[offset + r] = j;
+		}
+	}
 }
@@ -59,6 +59,11 @@ public class Main {
 	 *  - -t (int) :maximum number of seconds given to the algorithm
 	 *  - -g : graphical output of the solution
 	 *  - -v : trace level (print the solution at the end if true)
+	 *  - -i (int) : 1 if the instance is given by its distances (EXPLICIT), only
+	 *    needed when the file has no EDGE_WEIGHT_TYPE
+	 *  - -d (auto|matrix|onthefly) : how distances are stored, see Instance#DISTANCES_AUTO
+	 *  - -q : quiet, the header of the instance file is not printed
+	 *  - -c : use (and write) a binary cache of the instance next to the data file
 	 * 
 	 * **Program output**: fileName;routeLength;time;e 
 	 * 
@@ -74,7 +79,10 @@ public class Main {
 		long max_time = 60;
 		boolean verbose = false;
 		boolean graphical = false;
+		boolean echoHeader = true;
+		boolean useCache = false;
 		int typeInstance = 0;
+		int distanceMode = Instance.DISTANCES_AUTO;
 
 		// Parse commande line
 		for (int i = 0; i < args.length; i++) {
@@ -87,12 +95,21 @@ public class Main {
 				System.err.println("\t-t\t\t: maximum number of seconds given to the algorithm (int)");
 				System.err.println("\t-g\t\t: graphical output of the solution");
 				System.err.println("\t-v\t\t: trace level");
+				System.err.println("\t-i\t\t: 1 if the instance is given by its distances, when the file has no EDGE_WEIGHT_TYPE (int)");
+				System.err.println("\t-d\t\t: distance storage, auto, matrix or onthefly (default auto)");
+				System.err.println("\t-q\t\t: do not print the header of the instance file");
+				System.err.println("\t-c\t\t: use a binary cache of the instance (written next to the data file)");
+				System.err.println("\t-check\t: recomputes the cost of a solution every n modifications and stops if it is wrong (int)");
 				return;
 
 			} else if (args[i].compareTo("-v") == 0) {
 				verbose = true;
 			} else if (args[i].compareTo("-g") == 0) {
 				graphical = true;
+			} else if (args[i].compareTo("-q") == 0) {
+				echoHeader = false;
+			} else if (args[i].compareTo("-c") == 0) {
+				useCache = true;
 			} else if (args[i].compareTo("-t") == 0) {
 				try {
 					max_time = Integer.parseInt(args[++i]);
@@ -100,6 +117,13 @@ public class Main {
 					System.out.println("Error: The time given for -t is not a valid integer value.");
 					System.exit(1);
 				}
+			} else if (args[i].compareTo("-check") == 0) {
+				try {
+					Solution.setVerificationPeriod(Integer.parseInt(args[++i]));
+				} catch (Exception e) {
+					System.out.println("Error: The period given for -check is not a valid integer value.");
+					System.exit(1);
+				}
 			} else if (args[i].compareTo("-i") == 0) {
 				try {
 					typeInstance = Integer.parseInt(args[++i]);
@@ -107,6 +131,18 @@ public class Main {
 					System.out.println("error : the type of instance is not a valid type");
 					System.exit(1);
 				}
+			} else if (args[i].compareTo("-d") == 0) {
+				String mode = (i + 1 < args.length) ? args[++i] : "";
+				if (mode.compareTo("auto") == 0) {
+					distanceMode = Instance.DISTANCES_AUTO;
+				} else if (mode.compareTo("matrix") == 0) {
+					distanceMode = Instance.DISTANCES_MATRIX;
+				} else if (mode.compareTo("onthefly") == 0) {
+					distanceMode = Instance.DISTANCES_ON_THE_FLY;
+				} else {
+					System.out.println("Error: The value given for -d should be auto, matrix or onthefly.");
+					System.exit(1);
+				}
 			} else {
 				if (filename != null) {
 					System.err.println("Error: There is a problem in the program parameters.");
@@ -121,7 +157,7 @@ public class Main {
 		try {
 			
 			// Read data
-			Instance data = new Instance(filename, typeInstance);
+			Instance data = new Instance(filename, typeInstance, distanceMode, echoHeader, useCache);
 			
 			// Create a new problem
 			TSPSolver tsp = new TSPSolver(data,max_time);
@@ -5,6 +5,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 
+import tsp.localsearch.LinKernighan;
+import tsp.localsearch.Or3Opt;
+import tsp.localsearch.TwoOpt;
+
 /**
  * 
  * This class models a TSP Solution.
@@ -54,12 +58,21 @@ import java.util.Collections;
  * 
  * To explore a {@link Solution} object, the city at position can be obtained calling {@link #getCity(int position)}.
  * 
+ * {@link #getCity(int)} and {@link #setCityPosition(int, int)} check their arguments and throw an exception on a wrong
+ * index. Inside loops, prefer {@link #cityAt(int)} and {@link #setCityAt(int, int)}, which do the same without checks
+ * (arguments are only checked when assertions are enabled with java -ea).
+ * 
  * The {@link #isFeasible} method allows to check the feasibility of a solution.
  * 
- * To calculate the cost of a solution, you can call {@link #evaluate}.
+ * The position of each city is kept up to date with #m_cities, so {@link #contient(int)}, {@link #estVisite(int)},
+ * {@link #getPosition(int)}, {@link #getNext(int)} and {@link #getPrev(int)} are answered in O(1).
+ * 
+ * The cost of the solution, given by {@link #getObjectiveValue()}, is updated by every modification of the solution: writing
+ * a city only changes the cost of its two edges. {@link #evaluate} recomputes every distance from zero and is only needed
+ * after a call to {@link #setObjectiveValue(long newValue)} with a wrong value.
  * 
- * Note that {@link #evaluate()} recomputes every distance from zero. If you do a slight modification of the solution it is less time consuming to update
- * yourself the cost of the modified solution using the function {@link #setObjectiveValue(long newValue)}.
+ * To look for a mistake in the updates, {@link #setVerificationPeriod(int)} makes every solution compare its cost with
+ * the one given by {@link #evaluate} after a given number of modifications, and throw an exception if they differ.
  * 
  * 
  * @author Damien Prot, Fabien Lehuede, Axel Grimault
@@ -72,6 +85,21 @@ public class Solution{
 	// ----- ATTRIBUTS -------------
 	// -----------------------------
 
+	/** 3-opt reconnection reversing positions i+1 to j, see {@link #deltaThreeOpt}. */
+	public static final int THREE_OPT_REVERSE_FIRST = 1;
+	/** Reversal of positions j+1 to k. */
+	public static final int THREE_OPT_REVERSE_SECOND = 2;
+	/** Reversal of positions i+1 to k. */
+	public static final int THREE_OPT_REVERSE_BOTH = 3;
+	/** Reversal of positions i+1 to j and of positions j+1 to k. */
+	public static final int THREE_OPT_REVERSE_EACH = 4;
+	/** Exchange of segments i+1..j and j+1..k. */
+	public static final int THREE_OPT_EXCHANGE = 5;
+	/** Exchange of segments i+1..j and j+1..k, the second one being reversed. */
+	public static final int THREE_OPT_EXCHANGE_REVERSE_SECOND = 6;
+	/** Exchange of segments i+1..j and j+1..k, the first one being reversed. */
+	public static final int THREE_OPT_EXCHANGE_REVERSE_FIRST = 7;
+	
 	/**
 	 * 
 	 * This array stores the cities that constitute the solution.<br>
@@ -79,14 +107,40 @@ public class Solution{
 	 */
 	private int[] m_cities;
 
+	/**
+	 * #m_positions[c] is the position of city c in #m_cities (between 0 and
+	 * #m_nbCities-1, the last position is not indexed). If the city appears
+	 * several times, it is one of its positions.
+	 */
+	private int[] m_positions;
+
+	/**
+	 * #m_occurrences[c] is the number of times city c appears in #m_cities,
+	 * the last position excluded: the city is in the solution if it is not 0.
+	 */
+	private int[] m_occurrences;
+
+	/** First position after 0 holding city 0: the cities before it are the visited ones */
+	private int m_firstEmpty;
+
 	/**
 	 * Route cost or length (objective function).<br>
-	 * This value should be updated when the solution is modified with:
+	 * This value is updated by every modification of the solution, it can
+	 * also be set with:
 	 * 	- calling {@link #evaluate()} which recomputes the cost
 	 * 	- {@link #setObjectiveValue(long)}
 	 */
 	private long m_objectiveValue;
 
+	/**
+	 * Number of modifications of a solution between two checks of its cost,
+	 * 0 if the cost is never checked (see {@link #setVerificationPeriod(int)}).
+	 */
+	private static int m_verificationPeriod = 0;
+
+	/** Number of modifications of the solution, counted when the cost is checked */
+	private int m_nbChanges;
+
 	/** Data of the problem associated with the solution */
 	private Instance m_instance;
 
@@ -109,6 +163,10 @@ public class Solution{
 		m_instance = instance;
 		m_nbCities = instance.getNbCities();
 		m_cities = new int[m_nbCities + 1];
+		m_positions = new int[m_nbCities];
+		m_occurrences = new int[m_nbCities];
+		m_occurrences[0] = m_nbCities;
+		m_firstEmpty = 1;
 	}
 
 	/**
@@ -116,7 +174,10 @@ public class Solution{
 	 */
 	public Solution copy() {
 		Solution copySolution = new Solution(m_instance);
-		copySolution.m_cities = Arrays.copyOf(m_cities, m_nbCities + 1);
+		System.arraycopy(m_cities, 0, copySolution.m_cities, 0, m_nbCities + 1);
+		System.arraycopy(m_positions, 0, copySolution.m_positions, 0, m_nbCities);
+		System.arraycopy(m_occurrences, 0, copySolution.m_occurrences, 0, m_nbCities);
+		copySolution.m_firstEmpty = m_firstEmpty;
 		copySolution.m_objectiveValue = m_objectiveValue;
 		return copySolution;
 
@@ -141,20 +202,109 @@ public class Solution{
 		if ((indexCity < 0) || (indexCity >= m_nbCities))
 			throw new Exception("Error Instance.setVertexPosition(i,s) : city value s="
 					+ indexCity + ", must range between 0 and "	+ (m_nbCities - 1));
-		m_cities[position] = indexCity;
+		put(indexCity, position);
+		changed();
+	}
+
+	/**
+	 * Set city indexCity at position position in the solution, without
+	 * checking the arguments (see {@link #setCityPosition(int, int)}).
+	 * 
+	 * @param indexCity index of the city to insert.
+	 * @param position insertion position.
+	 */
+	public void setCityAt(int indexCity, int position) {
+		assert indexCity >= 0 && indexCity < m_nbCities : "city " + indexCity + " out of range";
+		put(indexCity, position);
+		changed();
+	}
+
+	/**
+	 * Writes city at position and updates the objective value: only the
+	 * edges from the previous position and to the next one change.
+	 * 
+	 * @param city index of the city
+	 * @param position position in the solution
+	 */
+	private void put(int city, int position) {
+		int old = m_cities[position];
+		if (position > 0) {
+			int before = m_cities[position - 1];
+			m_objectiveValue += m_instance.distance(before, city) - m_instance.distance(before, old);
+		}
+		if (position < m_nbCities) {
+			int after = m_cities[position + 1];
+			m_objectiveValue += m_instance.distance(city, after) - m_instance.distance(old, after);
+		}
+		write(city, position);
+	}
+
+	/**
+	 * Writes city at position in #m_cities and updates the positions, the
+	 * occurrences and the first empty position, but not the objective value.
+	 * 
+	 * @param city index of the city
+	 * @param position position in the solution
+	 */
+	private void write(int city, int position) {
+		int old = m_cities[position];
+		m_cities[position] = city;
+		if (position < m_nbCities) {
+			m_occurrences[old]--;
+			m_occurrences[city]++;
+			m_positions[city] = position;
+		}
+		if (position == 0) {
+			return;
+		}
+		if (city == 0) {
+			if (position < m_firstEmpty) {
+				m_firstEmpty = position;
+			}
+		} else if (position == m_firstEmpty) {
+			while (m_firstEmpty <= m_nbCities && m_cities[m_firstEmpty] != 0) {
+				m_firstEmpty++;
+			}
+		}
 	}
 
 	/**
 	 * Recomputes the objective value of the solution and return its value.
+	 */
+	public double evaluate() {
+		long value = 0;
+		for (int i = 0; i < m_nbCities; i++) {
+			value += m_instance.distance(m_cities[i], m_cities[i + 1]);
+		}
+		m_objectiveValue = value;
+		return value;
+	}
+
+	/**
+	 * Counts a modification of the solution and checks its objective value
+	 * every #m_verificationPeriod modifications.
+	 */
+	private void changed() {
+		if (m_verificationPeriod > 0 && ++m_nbChanges >= m_verificationPeriod) {
+			m_nbChanges = 0;
+			verify();
+		}
+	}
+
+	/**
+	 * Checks that the objective value is the cost of the solution, without modifying it.
 	 * 
-	 * @throws Exception
+	 * @throws IllegalStateException if the objective value is not the cost of the solution
 	 */
-	public double evaluate() throws Exception {
-		m_objectiveValue = 0;
+	public void verify() {
+		long value = 0;
 		for (int i = 0; i < m_nbCities; i++) {
-			m_objectiveValue += m_instance.getDistances(m_cities[i],m_cities[i + 1]);
+			value += m_instance.distance(m_cities[i], m_cities[i + 1]);
+		}
+		if (value != m_objectiveValue) {
+			throw new IllegalStateException("Error Solution.verify(): the objective value is "
+					+ m_objectiveValue + " but the cost of the solution is " + value);
 		}
-		return m_objectiveValue;
 	}
 
 	/**
@@ -169,9 +319,8 @@ public class Solution{
 	 * When an error is met, the error code can be obtained calling the method {@link #getError()}.
 	 * 
 	 * @return `true` if the solution is feasible `false` otherwise.
-	 * @throws Exception
 	 */
-	public boolean isFeasible() throws Exception {
+	public boolean isFeasible() {
 		boolean result = true;
 		m_error = "";
 		// Check first that the first and last cities are the same
@@ -235,9 +384,8 @@ public class Solution{
 	// -----------------------------
 
 	/**
-	 * @return The objective value of the function. This value should be updated when the
-	 *         solution is modified, either calling {@link evaluate} which recomputes the cost or
-	 *         {@link setObjectiveValue}
+	 * @return The objective value of the function. This value is updated by every
+	 *         modification of the solution.
 	 */
 	public long getObjectiveValue() {
 		return m_objectiveValue;
@@ -249,6 +397,23 @@ public class Solution{
 	 */
 	public void setObjectiveValue(long newValue) {
 		this.m_objectiveValue = newValue;
+		changed();
+	}
+
+	/**
+	 * Sets the number of modifications of a solution between two checks of
+	 * its objective value with {@link #verify()}. The check recomputes the
+	 * whole cost, so it is only meant to look for a mistake in the updates.
+	 * 
+	 * @param period the number of modifications, 0 to never check the objective value
+	 */
+	public static void setVerificationPeriod(int period) {
+		m_verificationPeriod = Math.max(0, period);
+	}
+
+	/** @return the number of modifications of a solution between two checks of its objective value, 0 if it is never checked */
+	public static int getVerificationPeriod() {
+		return m_verificationPeriod;
 	}
 
 	/**
@@ -271,6 +436,50 @@ public class Solution{
 		return m_cities[position];
 	}
 
+	/**
+	 * Returns the index of the city at position in the tour. The position is
+	 * only checked when assertions are enabled (see {@link #getCity(int)}).
+	 * @param position the position of the city, between 0 and nbCities
+	 */
+	public int cityAt(int position) {
+		assert position >= 0 && position <= m_nbCities : "position " + position + " out of range";
+		return m_cities[position];
+	}
+
+	/**
+	 * @param city a city of the solution
+	 * @return the position of city in the solution, between 0 and nbCities-1
+	 *         (one of them if the city appears several times)
+	 */
+	public int getPosition(int city) {
+		int position = m_positions[city];
+		if (m_cities[position] != city) {
+			// The indexed position has been overwritten, the city appears elsewhere
+			for (position = 0; m_cities[position] != city; position++) {
+			}
+			m_positions[city] = position;
+		}
+		return position;
+	}
+
+	/**
+	 * @param city a city of the solution
+	 * @return the city visited after city (the first city after the last one)
+	 */
+	public int getNext(int city) {
+		int position = getPosition(city) + 1;
+		return m_cities[position == m_nbCities ? 0 : position];
+	}
+
+	/**
+	 * @param city a city of the solution
+	 * @return the city visited before city (the last city before the first one)
+	 */
+	public int getPrev(int city) {
+		int position = getPosition(city);
+		return m_cities[position == 0 ? m_nbCities - 1 : position - 1];
+	}
+
 	/**
 	 * @return error code returned by `validate`
 	 */
@@ -279,7 +488,7 @@ public class Solution{
 	}
 
 	/**
-	 * @return the m_cities
+	 * @return the m_cities, it must not be modified (use {@link #setCityAt(int, int)})
 	 */
 	public int[] getM_cities() {
 		return m_cities;
@@ -299,12 +508,21 @@ public class Solution{
 	
 	/** Check if the city number ville has been visited
 	 * The city number 0 is always the first to be visited
-	 * As the city are added in ascending order the algorithm stops when it finds 0 in m_cities[]
+	 * As the city are added in ascending order the visited cities are the ones before the first 0 in m_cities[]
+	 * (it is answered in O(1) with the position of the city)
 	 * 
 	 * @param ville  number of the city to be checked
 	 * @return true if the city is visited, otherwise false
 	 */
 	public boolean estVisite(int ville) {
+		if (ville == 0 || m_occurrences[ville] == 0) {
+			return false;
+		}
+		int position = m_positions[ville];
+		if (m_occurrences[ville] == 1 && m_cities[position] == ville) {
+			return position >= 1 && position < m_firstEmpty;
+		}
+		// The city appears several times: look at all the visited cities
 		boolean res = false;
 		int curseur = 1;
 		while(m_cities[curseur]!=0 && !res) { 
@@ -319,22 +537,37 @@ public class Solution{
 	 * The first step is to get the last city visited
 	 * The second is to find its nearest city
 	 * 
+	 * The candidate list of the last city is looked at first: its first
+	 * unvisited city is the nearest one (candidate lists are sorted by
+	 * distance then by city number). All cities are scanned only when every
+	 * candidate has already been visited.
+	 * 
 	 * @return the number of the next city to be added in the solution
-	 * @throws Exception
 	 */
-	public int getPPVSuivant() throws Exception {
+	public int getPPVSuivant() {
 		int res = 1;
-		int dernier_voisin =1;
+		int dernier_voisin = m_firstEmpty;
 		long distance_mini = 1000000000; 
 		
-		while(m_cities[dernier_voisin]!=0) {
-			dernier_voisin++;//
+		int dernier = m_cities[dernier_voisin-1];
+		if(m_instance.getNbNeighbors() == 0) {
+			m_instance.getNeighbors(Instance.NB_NEIGHBORS);
+		}
+		for(int r=0;r<m_instance.getNbNeighbors();r++) {
+			int voisin = m_instance.getNeighbor(dernier, r);
+			if(voisin != 0 && !estVisite(voisin)) {
+				if(m_instance.distance(dernier, voisin)<distance_mini) {
+					return voisin;
+				}
+				break;
+			}
 		}
 		
 		for(int i=1;i<this.m_nbCities;i++) {
 			if(!estVisite(i)) { // si on n'a pas déjà visité la ville
-				if(this.m_instance.getDistances(m_cities[dernier_voisin-1], i)<distance_mini) { 
-					distance_mini = this.m_instance.getDistances(m_cities[dernier_voisin-1], i);
+				long d = this.m_instance.distance(dernier, i);
+				if(d<distance_mini) { 
+					distance_mini = d;
 					res = i;
 					
 				}
@@ -344,16 +577,307 @@ public class Solution{
 	}
 	
 	
-	/** Change the position of the city at the index index 1 and index2.
+	/** Change the position of the city at the index index 1 and index2, and updates the objective value.
 	 * 
 	 * @param index1 the index of the first element to swap
 	 * @param index2 the index of the second element to swap
-	 * @throws Exception
 	 */
-	public void swap(int index1, int index2) throws Exception {
-		int ville1 = this.getCity(index1);
-		this.setCityPosition(this.getCity(index2), index1);
-		this.setCityPosition(ville1, index2);
+	public void swap(int index1, int index2) {
+		int ville1 = m_cities[index1];
+		put(m_cities[index2], index1);
+		put(ville1, index2);
+		changed();
+	}
+	
+	//---------------------------------
+	//------DELTA EVALUATION-----------
+	//---------------------------------
+	
+	/*
+	 * The following methods evaluate a move in O(1) from the edges it removes
+	 * and adds, without modifying the solution. The returned value is the
+	 * change of the objective value: the move improves the solution when it is
+	 * negative. The apply methods perform the move in place and update
+	 * #m_objectiveValue with the same value.
+	 * 
+	 * Positions range between 1 and #m_nbCities-1: the first city of the tour
+	 * (position 0 and #m_nbCities) never moves.
+	 */
+	
+	/**
+	 * Cost change of the 2-opt move that reverses the cities between
+	 * positions i and k.
+	 * 
+	 * @param i first position of the reversed segment
+	 * @param k last position of the reversed segment, i < k
+	 * @return the change of the objective value
+	 */
+	public long deltaTwoOpt(int i, int k) {
+		int a = m_cities[i - 1];
+		int b = m_cities[i];
+		int c = m_cities[k];
+		int d = m_cities[k + 1];
+		return m_instance.distance(a, c) + m_instance.distance(b, d)
+				- m_instance.distance(a, b) - m_instance.distance(c, d);
+	}
+	
+	/**
+	 * Reverses the cities between positions i and k and updates the objective value.
+	 * 
+	 * @param i first position of the reversed segment
+	 * @param k last position of the reversed segment, i < k
+	 */
+	public void applyTwoOpt(int i, int k) {
+		m_objectiveValue += deltaTwoOpt(i, k);
+		reverse(i, k);
+		changed();
+	}
+	
+	/**
+	 * Cost change of a 3-opt move. The edges leaving positions i, j and k are
+	 * removed and the three paths are reconnected in one of the seven
+	 * possible ways (THREE_OPT_* constants). With a = city at i, b = at i+1,
+	 * c = at j, d = at j+1, e = at k and f = at k+1, the tour a b..c d..e f
+	 * becomes:
+	 * 	- #THREE_OPT_REVERSE_FIRST: a c..b d..e f
+	 * 	- #THREE_OPT_REVERSE_SECOND: a b..c e..d f
+	 * 	- #THREE_OPT_REVERSE_BOTH: a e..d c..b f
+	 * 	- #THREE_OPT_REVERSE_EACH: a c..b e..d f
+	 * 	- #THREE_OPT_EXCHANGE: a d..e b..c f
+	 * 	- #THREE_OPT_EXCHANGE_REVERSE_SECOND: a e..d b..c f
+	 * 	- #THREE_OPT_EXCHANGE_REVERSE_FIRST: a d..e c..b f
+	 * 
+	 * @param i position of the city before the first segment, 0 <= i
+	 * @param j last position of the first segment, i < j
+	 * @param k last position of the second segment, j < k < #m_nbCities
+	 * @param type the reconnection
+	 * @return the change of the objective value
+	 */
+	public long deltaThreeOpt(int i, int j, int k, int type) {
+		int a = m_cities[i];
+		int b = m_cities[i + 1];
+		int c = m_cities[j];
+		int d = m_cities[j + 1];
+		int e = m_cities[k];
+		int f = m_cities[k + 1];
+		long removed = m_instance.distance(a, b) + m_instance.distance(c, d) + m_instance.distance(e, f);
+		long added;
+		switch (type) {
+		case THREE_OPT_REVERSE_FIRST:
+			added = m_instance.distance(a, c) + m_instance.distance(b, d) + m_instance.distance(e, f);
+			break;
+		case THREE_OPT_REVERSE_SECOND:
+			added = m_instance.distance(a, b) + m_instance.distance(c, e) + m_instance.distance(d, f);
+			break;
+		case THREE_OPT_REVERSE_BOTH:
+			added = m_instance.distance(a, e) + m_instance.distance(d, c) + m_instance.distance(b, f);
+			break;
+		case THREE_OPT_REVERSE_EACH:
+			added = m_instance.distance(a, c) + m_instance.distance(b, e) + m_instance.distance(d, f);
+			break;
+		case THREE_OPT_EXCHANGE:
+			added = m_instance.distance(a, d) + m_instance.distance(e, b) + m_instance.distance(c, f);
+			break;
+		case THREE_OPT_EXCHANGE_REVERSE_SECOND:
+			added = m_instance.distance(a, e) + m_instance.distance(d, b) + m_instance.distance(c, f);
+			break;
+		case THREE_OPT_EXCHANGE_REVERSE_FIRST:
+			added = m_instance.distance(a, d) + m_instance.distance(e, c) + m_instance.distance(b, f);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown 3-opt reconnection " + type);
+		}
+		return added - removed;
+	}
+	
+	/**
+	 * Performs a 3-opt move (see {@link #deltaThreeOpt(int, int, int, int)})
+	 * and updates the objective value. The move is done with at most three
+	 * reversals, without allocation.
+	 * 
+	 * @param i position of the city before the first segment, 0 <= i
+	 * @param j last position of the first segment, i < j
+	 * @param k last position of the second segment, j < k < #m_nbCities
+	 * @param type the reconnection
+	 */
+	public void applyThreeOpt(int i, int j, int k, int type) {
+		m_objectiveValue += deltaThreeOpt(i, j, k, type);
+		// Length of the second segment, which comes first after an exchange
+		int second = k - j;
+		switch (type) {
+		case THREE_OPT_REVERSE_FIRST:
+			reverse(i + 1, j);
+			break;
+		case THREE_OPT_REVERSE_SECOND:
+			reverse(j + 1, k);
+			break;
+		case THREE_OPT_REVERSE_BOTH:
+			reverse(i + 1, k);
+			break;
+		case THREE_OPT_REVERSE_EACH:
+			reverse(i + 1, j);
+			reverse(j + 1, k);
+			break;
+		case THREE_OPT_EXCHANGE:
+			reverse(i + 1, k);
+			reverse(i + 1, i + second);
+			reverse(i + second + 1, k);
+			break;
+		case THREE_OPT_EXCHANGE_REVERSE_SECOND:
+			reverse(i + 1, k);
+			reverse(i + second + 1, k);
+			break;
+		case THREE_OPT_EXCHANGE_REVERSE_FIRST:
+			reverse(i + 1, k);
+			reverse(i + 1, i + second);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown 3-opt reconnection " + type);
+		}
+		changed();
+	}
+	
+	/**
+	 * Cost change of the exchange of the cities at positions index1 and index2
+	 * (see {@link #swap(int, int)}).
+	 * 
+	 * @param index1 the position of the first city
+	 * @param index2 the position of the second city
+	 * @return the change of the objective value
+	 */
+	public long deltaSwap(int index1, int index2) {
+		if (index1 == index2) {
+			return 0;
+		}
+		int p = Math.min(index1, index2);
+		int q = Math.max(index1, index2);
+		int a = m_cities[p];
+		int b = m_cities[q];
+		int before = m_cities[p - 1];
+		int after = m_cities[q + 1];
+		if (q == p + 1) {
+			return m_instance.distance(before, b) + m_instance.distance(a, after)
+					- m_instance.distance(before, a) - m_instance.distance(b, after);
+		}
+		int nextA = m_cities[p + 1];
+		int previousB = m_cities[q - 1];
+		return m_instance.distance(before, b) + m_instance.distance(b, nextA)
+				+ m_instance.distance(previousB, a) + m_instance.distance(a, after)
+				- m_instance.distance(before, a) - m_instance.distance(a, nextA)
+				- m_instance.distance(previousB, b) - m_instance.distance(b, after);
+	}
+	
+	/**
+	 * Exchanges the cities at positions index1 and index2 and updates the objective value.
+	 * 
+	 * @param index1 the position of the first city
+	 * @param index2 the position of the second city
+	 */
+	public void applySwap(int index1, int index2) {
+		int ville1 = m_cities[index1];
+		m_objectiveValue += deltaSwap(index1, index2);
+		write(m_cities[index2], index1);
+		write(ville1, index2);
+		changed();
+	}
+	
+	/**
+	 * Cost change of the or-opt move that takes the cities between positions
+	 * i and k and inserts them between positions p and p+1, reversed or not.
+	 * 
+	 * @param i first position of the moved segment
+	 * @param k last position of the moved segment, i <= k
+	 * @param p position after which the segment is inserted, p < i-1 or k < p < #m_nbCities
+	 * @param reversed if true the segment is inserted in the reverse order
+	 * @return the change of the objective value
+	 */
+	public long deltaOrOpt(int i, int k, int p, boolean reversed) {
+		if (p > k) {
+			return deltaThreeOpt(i - 1, k, p, reversed ? THREE_OPT_EXCHANGE_REVERSE_FIRST : THREE_OPT_EXCHANGE);
+		}
+		return deltaThreeOpt(p, i - 1, k, reversed ? THREE_OPT_EXCHANGE_REVERSE_SECOND : THREE_OPT_EXCHANGE);
+	}
+	
+	/**
+	 * Performs an or-opt move (see {@link #deltaOrOpt(int, int, int, boolean)})
+	 * and updates the objective value.
+	 * 
+	 * @param i first position of the moved segment
+	 * @param k last position of the moved segment, i <= k
+	 * @param p position after which the segment is inserted, p < i-1 or k < p < #m_nbCities
+	 * @param reversed if true the segment is inserted in the reverse order
+	 */
+	public void applyOrOpt(int i, int k, int p, boolean reversed) {
+		if (p > k) {
+			applyThreeOpt(i - 1, k, p, reversed ? THREE_OPT_EXCHANGE_REVERSE_FIRST : THREE_OPT_EXCHANGE);
+		} else {
+			applyThreeOpt(p, i - 1, k, reversed ? THREE_OPT_EXCHANGE_REVERSE_SECOND : THREE_OPT_EXCHANGE);
+		}
+	}
+	
+	/**
+	 * Cost change of the move made by {@link #troisOptSwap(Solution, int, int, int)}:
+	 * the cities at positions i..k, k+1..j-1 and j are put in the order j,
+	 * k+1..j-1, i..k.
+	 * 
+	 * @param i first position, i < k
+	 * @param k middle position, k < j
+	 * @param j last position, j < #m_nbCities
+	 * @return the change of the objective value
+	 */
+	public long deltaTroisOptSwap(int i, int k, int j) {
+		int before = m_cities[i - 1];
+		int first = m_cities[i];
+		int middle = m_cities[k];
+		int last = m_cities[j];
+		int after = m_cities[j + 1];
+		if (j == k + 1) {
+			// The city at j is moved before the segment i..k
+			return m_instance.distance(before, last) + m_instance.distance(last, first)
+					+ m_instance.distance(middle, after)
+					- m_instance.distance(before, first) - m_instance.distance(middle, last)
+					- m_instance.distance(last, after);
+		}
+		int next = m_cities[k + 1];
+		int previous = m_cities[j - 1];
+		return m_instance.distance(before, last) + m_instance.distance(last, next)
+				+ m_instance.distance(previous, first) + m_instance.distance(middle, after)
+				- m_instance.distance(before, first) - m_instance.distance(middle, next)
+				- m_instance.distance(previous, last) - m_instance.distance(last, after);
+	}
+	
+	/**
+	 * Performs in place the move of {@link #troisOptSwap(Solution, int, int, int)}
+	 * and updates the objective value.
+	 * 
+	 * @param i first position, i < k
+	 * @param k middle position, k < j
+	 * @param j last position, j < #m_nbCities
+	 */
+	public void applyTroisOptSwap(int i, int k, int j) {
+		m_objectiveValue += deltaTroisOptSwap(i, k, j);
+		// i..k, k+1..j-1, j becomes j, k+1..j-1, i..k
+		reverse(i, j);
+		reverse(i + 1, i + j - k - 1);
+		reverse(i + j - k, j);
+		changed();
+	}
+	
+	/**
+	 * Reverses the order of the cities between positions from and to, without
+	 * updating the objective value.
+	 * 
+	 * @param from the first position
+	 * @param to the last position
+	 */
+	private void reverse(int from, int to) {
+		while (from < to) {
+			int ville = m_cities[from];
+			write(m_cities[to], from);
+			write(ville, to);
+			from++;
+			to--;
+		}
 	}
 	
 	//---------------------------------
@@ -366,43 +890,43 @@ public class Solution{
 	 * @param i
 	 * @param k
 	 * @return
-	 * @throws Exception
 	 */
-	public Solution optSwap(Solution sol, int i, int k) throws Exception{
-		Solution copy = sol.copy();
+	public Solution optSwap(Solution sol, int i, int k) {
 		Solution solSwap = sol.copy();
 		for (int j=i; j<=k; j++) {
-			solSwap.setCityPosition(copy.getCity(j), i+k-j);
+			solSwap.write(sol.m_cities[j], i+k-j);
+		}
+		if (i >= 1 && i < k && k < m_nbCities) {
+			solSwap.m_objectiveValue += sol.deltaTwoOpt(i, k);
+		} else {
+			solSwap.evaluate();
 		}
+		solSwap.changed();
 		return solSwap;
 	}
 	
 	/**
+	 * Applies the 2-opt local search to sol: see {@link TwoOpt}, which works
+	 * in place with candidate lists and don't-look bits.
 	 * 
-	 * @param sol
-	 * @return
-	 * @throws Exception
+	 * @param sol a feasible solution, it is not modified
+	 * @return a 2-optimal solution for the candidate lists
 	 */
-	public Solution opt(Solution sol) throws Exception {
-		Solution newSolution = sol.copy();
-		
-		int amelioration = 0;
-		while (amelioration<5) {
-			double meilleureDistance = sol.evaluate();
-			for (int i=1; i<m_nbCities-1; i++) {
-				for (int k=i+1; k<m_nbCities; k++) {
-					newSolution = optSwap(sol, i, k);
-					double newDistance = newSolution.evaluate();
-					if (newDistance<meilleureDistance) {
-						amelioration = 0;
-						sol = newSolution.copy();
-						meilleureDistance = newDistance;
-					}
-				}
-			}
-			amelioration++;
-		}
-		return sol;
+	public Solution opt(Solution sol) {
+		return new TwoOpt(m_instance, "2-opt").solve(sol);
+	}
+	
+	/**
+	 * Applies the Lin-Kernighan local search to sol: see {@link LinKernighan}.
+	 * It goes much further than {@link #opt(Solution)} and
+	 * {@link #troisOpt(Solution)}, in a time close to linear in the number of
+	 * cities.
+	 * 
+	 * @param sol a feasible solution, it is not modified
+	 * @return a local optimum for the Lin-Kernighan moves
+	 */
+	public Solution linKernighan(Solution sol) {
+		return new LinKernighan(m_instance, "Lin-Kernighan").solve(sol);
 	}
 	
 	
@@ -413,53 +937,39 @@ public class Solution{
 	 * @param k
 	 * @param j
 	 * @return
-	 * @throws Exception
 	 */
-	public Solution troisOptSwap(Solution sol, int i, int k, int j) throws Exception {
-		Solution copy = sol.copy();
+	public Solution troisOptSwap(Solution sol, int i, int k, int j) {
 		Solution solSwap = sol.copy();
 		int lon = k-i;
 		for (int l=i; l<=k; l++) {
-			solSwap.setCityPosition(copy.getCity(l), j-lon);
+			solSwap.write(sol.m_cities[l], j-lon);
 			lon--;
 		}
 		int pos = 1;
 		for (int m=k+1; m<j; m++) {
-			solSwap.setCityPosition(copy.getCity(m), i+pos);
+			solSwap.write(sol.m_cities[m], i+pos);
 			pos++;
 		}
-		solSwap.setCityPosition(copy.getCity(j), i);
+		solSwap.write(sol.m_cities[j], i);
+		if (i >= 1 && i < k && k < j && j < m_nbCities) {
+			solSwap.m_objectiveValue += sol.deltaTroisOptSwap(i, k, j);
+		} else {
+			solSwap.evaluate();
+		}
+		solSwap.changed();
 		return solSwap;
 	}
 	
 	
 	/**
+	 * Applies the 3-opt local search to sol: see {@link Or3Opt}, which looks
+	 * only at the moves given by the candidate lists and works in place.
 	 * 
-	 * @param sol
-	 * @return
-	 * @throws Exception
-	 */
-	public Solution troisOpt(Solution sol) throws Exception {
-		Solution newSolution = sol.copy();
-		int amelioration = 0;
-		while (amelioration<5) {
-			double meilleureDistance = sol.evaluate();
-			for (int i=1; i<m_nbCities-2; i++) {
-				for (int k=i+1; k<m_nbCities-1; k++) {
-					for (int j=k+1; j<m_nbCities; j++) {
-						newSolution = troisOptSwap(sol, i, k, j);
-						double newDistance = newSolution.evaluate();
-						if (newDistance<meilleureDistance) {
-							amelioration = 0;
-							sol = newSolution.copy();
-							meilleureDistance = newDistance;
-						}
-					}
-				}
-			}
-			amelioration++;
-		}
-		return sol;
+	 * @param sol a feasible solution, it is not modified
+	 * @return a 3-optimal solution for the candidate lists
+	 */
+	public Solution troisOpt(Solution sol) {
+		return new Or3Opt(m_instance, "3-opt").solve(sol);
 	}
 	
 	
@@ -481,14 +991,8 @@ public class Solution{
 	 * 
 	 * @param val 
 	 * @return true if the solution contains the city val, otherwise false
-	 * @throws Exception
-	 */
-	public boolean contient(int val) throws Exception {
-		boolean res = this.getCity(0)==val;
-		int compteur=0;
-		while(!res && compteur<this.getM_nbCities()) {
-			res = this.getCity(compteur)==val;
-			compteur++;
-		} return res;
+	 */
+	public boolean contient(int val) {
+		return m_occurrences[val] > 0;
 	}
 }
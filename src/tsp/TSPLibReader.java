@@ -0,0 +1,406 @@
+package tsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads a file of the TSPLib. The file is mapped in memory and
+ * numbers are parsed directly from its bytes, so reading the data section
+ * does not allocate any object.
+ * 
+ * The header (the "KEY : VALUE" lines) is read by {@link #readHeader}, which
+ * stops at the first section keyword (a line ending with "_SECTION"). The
+ * data of the section can then be read token by token with
+ * {@link #nextDouble()}, {@link #nextLong()} and {@link #nextLabel()}.
+ *
+ */
+public class TSPLibReader {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Exact powers of ten that can be represented by a double */
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Greatest mantissa for which the fast path of {@link #nextDouble()} is exact (2^53) */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/** Content of the file */
+	private ByteBuffer m_buffer;
+
+	/** Position of the next byte to read */
+	private int m_pos;
+
+	/** Number of bytes of the file */
+	private int m_limit;
+
+	/** Start of the last label that was not an integer */
+	private int m_lastToken;
+
+	/** Name of the file */
+	private String m_fileName;
+
+	/** Value of the NAME entry of the header */
+	private String m_name;
+
+	/** Value of the DIMENSION entry of the header, -1 if it is missing */
+	private int m_dimension = -1;
+
+	/** Value of the EDGE_WEIGHT_TYPE entry of the header */
+	private String m_edgeWeightType;
+
+	/** Value of the EDGE_WEIGHT_FORMAT entry of the header */
+	private String m_edgeWeightFormat;
+
+	/** Name of the section that follows the header */
+	private String m_section;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Maps the file in memory.
+	 * 
+	 * @param fileName the TSPLib file
+	 * @throws IOException if the file cannot be read
+	 */
+	public TSPLibReader(String fileName) throws IOException {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			throw new IOException("The instance file : " + fileName + " does not exist.");
+		}
+		if (file.length() > Integer.MAX_VALUE) {
+			throw new IOException("The instance file : " + fileName + " is too large.");
+		}
+		m_fileName = fileName;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			m_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		m_limit = m_buffer.limit();
+		m_pos = 0;
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Reads the header of the file, until the first section keyword.
+	 * 
+	 * @param echo if not null, the lines of the header are printed on this stream
+	 * @throws IOException if the file has no section or no DIMENSION
+	 */
+	public void readHeader(PrintStream echo) throws IOException {
+		while (m_pos < m_limit) {
+			String line = nextLine().trim();
+			if (echo != null) {
+				echo.println(line);
+			}
+			if (line.isEmpty()) {
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				if (line.endsWith("_SECTION")) {
+					m_section = line;
+					break;
+				}
+				if (line.equals("EOF")) {
+					break;
+				}
+				continue;
+			}
+			String key = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if (key.equals("NAME")) {
+				m_name = value;
+			} else if (key.equals("DIMENSION")) {
+				try {
+					m_dimension = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid DIMENSION in " + m_fileName + " : " + value);
+				}
+			} else if (key.equals("EDGE_WEIGHT_TYPE")) {
+				m_edgeWeightType = value;
+			} else if (key.equals("EDGE_WEIGHT_FORMAT")) {
+				m_edgeWeightFormat = value;
+			}
+		}
+		if (m_dimension < 0) {
+			throw new IOException("No DIMENSION found in " + m_fileName);
+		}
+		if (m_section == null) {
+			throw new IOException("No data section found in " + m_fileName);
+		}
+	}
+
+	/**
+	 * Reads the rest of the current line.
+	 * @return the line, without the end of line characters
+	 */
+	private String nextLine() {
+		int start = m_pos;
+		while (m_pos < m_limit && m_buffer.get(m_pos) != '\n') {
+			m_pos++;
+		}
+		int end = m_pos;
+		if (m_pos < m_limit) {
+			m_pos++;
+		}
+		if (end > start && m_buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		byte[] bytes = new byte[end - start];
+		for (int k = 0; k < bytes.length; k++) {
+			bytes[k] = m_buffer.get(start + k);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Moves to the first character of the next token.
+	 * @throws IOException if the end of the file is reached
+	 */
+	private void skipSpaces() throws IOException {
+		while (m_pos < m_limit && m_buffer.get(m_pos) <= ' ') {
+			m_pos++;
+		}
+		if (m_pos >= m_limit) {
+			throw new IOException("Unexpected end of file in " + m_fileName);
+		}
+	}
+
+	/**
+	 * @return the position of the first whitespace after the current position
+	 */
+	private int tokenEnd() {
+		int end = m_pos;
+		while (end < m_limit && m_buffer.get(end) > ' ') {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * @return `true` if the next token is "EOF" or if the end of the file is reached
+	 */
+	public boolean atEOF() {
+		while (m_pos < m_limit && m_buffer.get(m_pos) <= ' ') {
+			m_pos++;
+		}
+		return m_pos >= m_limit || (tokenEnd() - m_pos == 3 && m_buffer.get(m_pos) == 'E'
+				&& m_buffer.get(m_pos + 1) == 'O' && m_buffer.get(m_pos + 2) == 'F');
+	}
+
+	/**
+	 * Reads an integer token.
+	 * @return the value of the token
+	 * @throws IOException if the token is not an integer
+	 */
+	public long nextLong() throws IOException {
+		skipSpaces();
+		int start = m_pos;
+		boolean negative = false;
+		byte c = m_buffer.get(m_pos);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			m_pos++;
+		}
+		long value = 0;
+		int digits = 0;
+		while (m_pos < m_limit) {
+			c = m_buffer.get(m_pos);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			value = value * 10 + (c - '0');
+			digits++;
+			m_pos++;
+		}
+		if (digits == 0 || digits > 18 || (m_pos < m_limit && m_buffer.get(m_pos) > ' ')) {
+			m_pos = start;
+			String token = nextToken();
+			try {
+				return Long.parseLong(token);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid integer in " + m_fileName + " : " + token);
+			}
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Reads a decimal token, such as "12", "-3.5" or "8.75100e+02". The result
+	 * is the same as {@link Double#parseDouble(String)}: numbers with at most
+	 * 15 significant digits and a small exponent are computed exactly with one
+	 * multiplication or division, other numbers are given to
+	 * {@link Double#parseDouble(String)}.
+	 * 
+	 * @return the value of the token
+	 * @throws IOException if the token is not a number
+	 */
+	public double nextDouble() throws IOException {
+		skipSpaces();
+		int start = m_pos;
+		boolean negative = false;
+		byte c = m_buffer.get(m_pos);
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			m_pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean valid = false;
+		boolean dot = false;
+		while (m_pos < m_limit) {
+			c = m_buffer.get(m_pos);
+			if (c >= '0' && c <= '9') {
+				valid = true;
+				if (mantissa != 0 || c != '0') {
+					digits++;
+				}
+				if (digits <= 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (dot) {
+						exponent--;
+					}
+				} else if (!dot) {
+					exponent++;
+				}
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+			m_pos++;
+		}
+		if (valid && m_pos < m_limit && (c == 'e' || c == 'E')) {
+			m_pos++;
+			boolean negativeExponent = false;
+			if (m_pos < m_limit && (m_buffer.get(m_pos) == '-' || m_buffer.get(m_pos) == '+')) {
+				negativeExponent = m_buffer.get(m_pos) == '-';
+				m_pos++;
+			}
+			int e = 0;
+			int expDigits = 0;
+			while (m_pos < m_limit && (c = m_buffer.get(m_pos)) >= '0' && c <= '9' && expDigits < 6) {
+				e = e * 10 + (c - '0');
+				expDigits++;
+				m_pos++;
+			}
+			valid = expDigits > 0;
+			exponent += negativeExponent ? -e : e;
+		}
+		if (!valid || digits > 15 || mantissa >= MAX_EXACT_MANTISSA || exponent > 22 || exponent < -22
+				|| (m_pos < m_limit && m_buffer.get(m_pos) > ' ')) {
+			m_pos = start;
+			String token = nextToken();
+			try {
+				return Double.parseDouble(token);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid number in " + m_fileName + " : " + token);
+			}
+		}
+		double value = mantissa;
+		if (exponent > 0) {
+			value *= POWERS_OF_TEN[exponent];
+		} else if (exponent < 0) {
+			value /= POWERS_OF_TEN[-exponent];
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Reads a city label. Labels are usually integers, they are then returned
+	 * without creating a String.
+	 * 
+	 * @return the label if it is a non-negative integer, -1 otherwise (the label can
+	 *         then be obtained with {@link #lastToken()})
+	 * @throws IOException if the end of the file is reached
+	 */
+	public int nextLabel() throws IOException {
+		skipSpaces();
+		int start = m_pos;
+		int end = tokenEnd();
+		long value = 0;
+		for (int k = start; k < end; k++) {
+			byte c = m_buffer.get(k);
+			if (c < '0' || c > '9' || end - start > 9) {
+				m_lastToken = start;
+				m_pos = end;
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		m_pos = end;
+		return (int) value;
+	}
+
+	/**
+	 * @return the last label that was not an integer
+	 */
+	public String lastToken() {
+		int save = m_pos;
+		m_pos = m_lastToken;
+		String token = nextToken();
+		m_pos = save;
+		return token;
+	}
+
+	/**
+	 * Reads the next token as a string.
+	 * @return the token
+	 */
+	private String nextToken() {
+		int end = tokenEnd();
+		byte[] bytes = new byte[end - m_pos];
+		for (int k = 0; k < bytes.length; k++) {
+			bytes[k] = m_buffer.get(m_pos + k);
+		}
+		m_pos = end;
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the NAME entry of the header, null if it is missing */
+	public String getName() {
+		return m_name;
+	}
+
+	/** @return the DIMENSION entry of the header */
+	public int getDimension() {
+		return m_dimension;
+	}
+
+	/** @return the EDGE_WEIGHT_TYPE entry of the header, null if it is missing */
+	public String getEdgeWeightType() {
+		return m_edgeWeightType;
+	}
+
+	/** @return the EDGE_WEIGHT_FORMAT entry of the header, null if it is missing */
+	public String getEdgeWeightFormat() {
+		return m_edgeWeightFormat;
+	}
+
+	/** @return the section keyword that ends the header */
+	public String getSection() {
+		return m_section;
+	}
+}
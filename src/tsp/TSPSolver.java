@@ -4,6 +4,8 @@ import tsp.metaheuristic.*;
 import java.util.ArrayList;
 
 import tsp.heuristic.*;
+import tsp.neighborhood.*;
+import tsp.localsearch.IteratedLocalSearch;
 
 /**
  * 
@@ -76,76 +78,89 @@ public class TSPSolver {
 	{
 		m_solution.print(System.err);
 		
-		// Example of a time loop
+		// The pipeline runs once, the iterated local search gets the remaining time
 		long startTime = System.currentTimeMillis();
-		long spentTime = 0;
-		do
-		{
-			int nbInstance = this.getInstance().getNbCities();
-			System.out.println("nbInstance = "+nbInstance);
-			
-			//-------------------------Solution initiale pour les méthaheuristiques------------
-			
-			PPV ppv = new PPV(m_instance,"oui");
-			ppv.solve();
-			Solution sol = ppv.getSolution();
+		
+		int nbInstance = this.getInstance().getNbCities();
+		System.out.println("nbInstance = "+nbInstance);
+		
+		//-------------------------Solution initiale pour les méthaheuristiques------------
+		
+		PPV ppv = new PPV(m_instance,"oui");
+		ppv.solve();
+		Solution sol = ppv.getSolution();
+		
+
+
+		
+	//-------------------------------GENETIC--------------------
 			
-	
-	
+		if(nbInstance<100) {
+			// About one swap for two children
+			double tauxmut=0.5/nbInstance;
+			boolean elitisme = true;
+			int nbgene=15000;
+			int taillepop=200;
+			int nbindtournoi=3;
+			Solution solinit = sol.copy();
 			
-		//-------------------------------GENETIC--------------------
-				
-			if(nbInstance<100) {
-				double tauxmut=1;
-				boolean elitisme = true;
-				int nbgene=15000;
-				int taillepop=200;
-				int nbindtournoi=3;
-				Solution solinit = sol.copy();
-				
-				Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
-				sol = genetic.solve(sol);
-			} else if(nbInstance<150) {
-				double tauxmut=1;
-				boolean elitisme = true;
-				int nbgene=10000;
-				int taillepop=200;
-				int nbindtournoi=3;
-				Solution solinit = sol.copy();
-				
-				Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
-				sol = genetic.solve(sol);
-			}
-			else if(nbInstance<205) {
-				double tauxmut=1;
-				boolean elitisme = true;
-				int nbgene=6000;
-				int taillepop=100;
-				int nbindtournoi=3;
-				Solution solinit = sol.copy();
-				
-				Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
-				sol = genetic.solve(sol);
-			}
-				
-	
-			//-------------------------2-opt------------
+			Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
+			genetic.setNbThreads(Runtime.getRuntime().availableProcessors());
+			sol = genetic.solve(sol);
+		} else if(nbInstance<150) {
+			// About one swap for two children
+			double tauxmut=0.5/nbInstance;
+			boolean elitisme = true;
+			int nbgene=10000;
+			int taillepop=200;
+			int nbindtournoi=3;
+			Solution solinit = sol.copy();
 			
-			sol = sol.opt(sol);
+			Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
+			genetic.setNbThreads(Runtime.getRuntime().availableProcessors());
+			sol = genetic.solve(sol);
+		}
+		else if(nbInstance<205) {
+			// About one swap for two children
+			double tauxmut=0.5/nbInstance;
+			boolean elitisme = true;
+			int nbgene=6000;
+			int taillepop=100;
+			int nbindtournoi=3;
+			Solution solinit = sol.copy();
 			
-			//-------------------------3-opt------------
-			if(nbInstance<320) {
-				sol = sol.troisOpt(sol);
-			}
+			Genetic genetic = new Genetic(this.getInstance(), "TSP_Genetic", tauxmut, elitisme, nbindtournoi, nbgene, taillepop, solinit);
+			genetic.setNbThreads(Runtime.getRuntime().availableProcessors());
+			sol = genetic.solve(sol);
+		}
 			
 
-			//-------------------------Affectation de la solution------------
-			
-			this.setSolution(sol);
-			
-			spentTime = System.currentTimeMillis() - startTime;
-			
-		} while(spentTime < (m_timeLimit * 1000 - 100) );
+		//-------------------------2-opt------------
+		
+		sol = sol.opt(sol);
+		
+		//-------------------------Or-opt------------
+		
+		sol = new OrOpt(m_instance, "Or-opt").improve(sol);
+		
+		//-------------------------Lin-Kernighan------------
+		
+		sol = sol.linKernighan(sol);
+		
+		//-------------------------3-opt------------
+		sol = sol.troisOpt(sol);
+		
+		//-------------------------Iterated local search------------
+		
+		long remainingTime = m_timeLimit * 1000 - 100 - (System.currentTimeMillis() - startTime);
+		if (remainingTime > 0) {
+			sol = new IteratedLocalSearch(m_instance, "ILS", remainingTime).solve(sol);
+		}
+		
+
+		//-------------------------Affectation de la solution------------
+		
+		this.setSolution(sol);
 
 		
 	}
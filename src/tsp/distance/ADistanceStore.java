@@ -0,0 +1,58 @@
+package tsp.distance;
+
+/**
+ * This is the abstract class for the storage of the distances of an Instance.
+ * 
+ * Problems are symmetric, so an implementation only has to answer for a pair
+ * of distinct cities; the distance from a city to itself is always 0.
+ * Implementations do not check the city indices, this is done by
+ * {@link tsp.Instance#getDistances(int, int)}.
+ *
+ */
+abstract public class ADistanceStore {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of cities. */
+	protected int m_nbCities;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param nbCities the number of cities of the problem
+	 */
+	public ADistanceStore(int nbCities) {
+		m_nbCities = nbCities;
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * @param i first city (between 0 and nbCities-1)
+	 * @param j second city (between 0 and nbCities-1)
+	 * @return the distance between i and j
+	 */
+	public abstract long get(int i, int j);
+
+	/** @return an estimation of the memory used by the store, in bytes */
+	public abstract long getMemoryFootprint();
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the number of cities */
+	public int getNbCities() {
+		return m_nbCities;
+	}
+}
@@ -0,0 +1,148 @@
+package tsp.distance;
+
+/**
+ * Distance functions of the TSPLib. These functions are the only place where
+ * distances between coordinates are rounded, so that every distance store
+ * gives exactly the same values.
+ *
+ */
+public final class Metric {
+
+	/** Euclidean distance rounded to the nearest integer (EDGE_WEIGHT_TYPE EUC_2D) */
+	public static final int EUC_2D = 0;
+
+	/** Geographical distance (EDGE_WEIGHT_TYPE GEO) */
+	public static final int GEO = 1;
+
+	/** Pseudo-euclidean distance (EDGE_WEIGHT_TYPE ATT) */
+	public static final int ATT = 2;
+
+	/** Euclidean distance rounded up (EDGE_WEIGHT_TYPE CEIL_2D) */
+	public static final int CEIL_2D = 3;
+
+	/** Distances given in the file (EDGE_WEIGHT_TYPE EXPLICIT) */
+	public static final int EXPLICIT = 4;
+
+	/** Value of PI used by the TSPLib for geographical distances */
+	public static final double PI = 3.141592;
+
+	/** Radius of the earth used by the TSPLib for geographical distances */
+	public static final double RRR = 6378.388;
+
+	private Metric() {
+	}
+
+	/**
+	 * @param edgeWeightType the EDGE_WEIGHT_TYPE of a TSPLib file
+	 * @return the corresponding metric (#EUC_2D, #GEO, #ATT, #CEIL_2D or
+	 *         #EXPLICIT), -1 if the type is not handled
+	 */
+	public static int fromName(String edgeWeightType) {
+		if (edgeWeightType == null) {
+			return -1;
+		}
+		switch (edgeWeightType) {
+		case "EUC_2D":
+			return EUC_2D;
+		case "GEO":
+			return GEO;
+		case "ATT":
+			return ATT;
+		case "CEIL_2D":
+			return CEIL_2D;
+		case "EXPLICIT":
+			return EXPLICIT;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Computes the distance between two cities given by their coordinates.
+	 * 
+	 * @param metric #EUC_2D, #GEO, #ATT or #CEIL_2D
+	 * @param xi x coordinate of the first city (longitude in radians for #GEO)
+	 * @param yi y coordinate of the first city (latitude in radians for #GEO)
+	 * @param xj x coordinate of the second city (longitude in radians for #GEO)
+	 * @param yj y coordinate of the second city (latitude in radians for #GEO)
+	 * @return the distance
+	 */
+	public static long distance(int metric, double xi, double yi, double xj, double yj) {
+		switch (metric) {
+		case GEO:
+			return geographic(xi, yi, xj, yj);
+		case ATT:
+			return pseudoEuclidean(xi, yi, xj, yj);
+		case CEIL_2D:
+			return ceilEuclidean(xi, yi, xj, yj);
+		default:
+			return euclidean(xi, yi, xj, yj);
+		}
+	}
+
+	/**
+	 * @param xi x coordinate of the first city
+	 * @param yi y coordinate of the first city
+	 * @param xj x coordinate of the second city
+	 * @param yj y coordinate of the second city
+	 * @return the euclidean distance rounded to the nearest integer
+	 */
+	public static long euclidean(double xi, double yi, double xj, double yj) {
+		double dx = xi - xj;
+		double dy = yi - yj;
+		return (long) Math.rint(Math.hypot(dx, dy));
+	}
+
+	/**
+	 * @param xi x coordinate of the first city
+	 * @param yi y coordinate of the first city
+	 * @param xj x coordinate of the second city
+	 * @param yj y coordinate of the second city
+	 * @return the euclidean distance rounded up to the next integer
+	 */
+	public static long ceilEuclidean(double xi, double yi, double xj, double yj) {
+		double dx = xi - xj;
+		double dy = yi - yj;
+		return (long) Math.ceil(Math.sqrt(dx * dx + dy * dy));
+	}
+
+	/**
+	 * @param xi x coordinate of the first city
+	 * @param yi y coordinate of the first city
+	 * @param xj x coordinate of the second city
+	 * @param yj y coordinate of the second city
+	 * @return the pseudo-euclidean distance of the TSPLib (ATT), which is
+	 *         never lower than the euclidean distance divided by sqrt(10)
+	 */
+	public static long pseudoEuclidean(double xi, double yi, double xj, double yj) {
+		double dx = xi - xj;
+		double dy = yi - yj;
+		double r = Math.sqrt((dx * dx + dy * dy) / 10.0);
+		long t = (long) (r + 0.5);
+		return t < r ? t + 1 : t;
+	}
+
+	/**
+	 * @param degrees a coordinate of a geographical instance
+	 * @return the coordinate in radians, as used by {@link #geographic}
+	 */
+	public static double toRadian(double degrees) {
+		return PI*degrees/180.0;
+	}
+
+	/**
+	 * @param longRadianI first coordinate of the first city, in radians
+	 * @param latRadianI second coordinate of the first city, in radians
+	 * @param longRadianJ first coordinate of the second city, in radians
+	 * @param latRadianJ second coordinate of the second city, in radians
+	 * @return the geographical distance between the two cities
+	 */
+	public static long geographic(double longRadianI, double latRadianI, double longRadianJ, double latRadianJ) {
+		double q1 = Math.cos(longRadianI - longRadianJ);
+		double q2 = Math.cos(latRadianI - latRadianJ);
+		double q3 = Math.cos(latRadianI + latRadianJ);
+
+		int res = (int) (RRR*Math.acos(0.5*((1.0+q1)*q2-(1.0-q1)*q3))+1.0);
+		return res;
+	}
+}
@@ -0,0 +1,133 @@
+package tsp.distance;
+
+/**
+ * Distance store that does not store distances: they are computed from the
+ * coordinates each time they are asked, with the same rounding as the
+ * distance matrix. The memory used is linear in the number of cities, which
+ * allows instances with 100000 cities and more.
+ * 
+ * Each thread keeps a small direct-mapped cache of the last computed pairs, so
+ * that local searches which look at the same edges again and again do not
+ * recompute them.
+ *
+ */
+public class OnTheFlyDistanceStore extends ADistanceStore {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Default number of entries of the per-thread cache (a power of two). */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	/** x coordinates (or longitudes in radians for geographical instances) */
+	private final double[] m_x;
+
+	/** y coordinates (or latitudes in radians for geographical instances) */
+	private final double[] m_y;
+
+	/** The distance function: Metric#EUC_2D, Metric#GEO, Metric#ATT or Metric#CEIL_2D */
+	private final int m_metric;
+
+	/** Mask giving the cache slot of a key, the cache size minus one */
+	private final int m_cacheMask;
+
+	/** Per-thread cache of computed distances */
+	private final ThreadLocal<Cache> m_cache;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates a store with the default cache size.
+	 * 
+	 * @param x x coordinates, or longitudes in radians for Metric#GEO
+	 * @param y y coordinates, or latitudes in radians for Metric#GEO
+	 * @param metric the distance function, see {@link Metric#distance}
+	 */
+	public OnTheFlyDistanceStore(double[] x, double[] y, int metric) {
+		this(x, y, metric, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a store. The coordinates arrays are not copied and must not be
+	 * modified afterwards.
+	 * 
+	 * @param x x coordinates, or longitudes in radians for Metric#GEO
+	 * @param y y coordinates, or latitudes in radians for Metric#GEO
+	 * @param metric the distance function, see {@link Metric#distance}
+	 * @param cacheSize number of entries of the per-thread cache, rounded up to a power of two
+	 */
+	public OnTheFlyDistanceStore(double[] x, double[] y, int metric, int cacheSize) {
+		super(x.length);
+		m_x = x;
+		m_y = y;
+		m_metric = metric;
+		final int size = Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+		m_cacheMask = size - 1;
+		m_cache = ThreadLocal.withInitial(() -> new Cache(size));
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public long get(int i, int j) {
+		if (i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		} else if (i == j) {
+			return 0;
+		}
+		// 0 is the empty slot, so keys start at 1
+		long key = (long) i * m_nbCities + j + 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & m_cacheMask;
+		Cache cache = m_cache.get();
+		if (cache.m_keys[slot] == key) {
+			return cache.m_values[slot];
+		}
+		long dist = compute(i, j);
+		if (dist <= Integer.MAX_VALUE) {
+			cache.m_keys[slot] = key;
+			cache.m_values[slot] = (int) dist;
+		}
+		return dist;
+	}
+
+	/**
+	 * @param i first city
+	 * @param j second city
+	 * @return the distance between i and j, computed from the coordinates
+	 */
+	public long compute(int i, int j) {
+		return Metric.distance(m_metric, m_x[i], m_y[i], m_x[j], m_y[j]);
+	}
+
+	@Override
+	public long getMemoryFootprint() {
+		return 16L * m_nbCities + 12L * (m_cacheMask + 1);
+	}
+
+
+	/**
+	 * Direct-mapped cache of distances, one per thread.
+	 */
+	private static class Cache {
+
+		/** Key of the pair stored in each slot, 0 if the slot is empty */
+		private final long[] m_keys;
+
+		/** Distance of the pair stored in each slot */
+		private final int[] m_values;
+
+		private Cache(int size) {
+			m_keys = new long[size];
+			m_values = new int[size];
+		}
+	}
+}
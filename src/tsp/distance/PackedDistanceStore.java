@@ -0,0 +1,187 @@
+package tsp.distance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Distance store keeping only the upper triangle of the distance matrix in a
+ * single flat array.
+ * 
+ * The distance between i and j (i &lt; j) is stored at index
+ * #m_rowOffset[i] + j. Entries are stored on 16 bits when every distance is
+ * at most {@link #MAX_NARROW}, on 32 bits otherwise. For 10000 cities this
+ * takes 100 MB (or 200 MB on 32 bits) instead of 800 MB for a full
+ * `long[][]` matrix.
+ *
+ */
+public class PackedDistanceStore extends ADistanceStore {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Greatest distance that can be stored on 16 bits. */
+	public static final long MAX_NARROW = Character.MAX_VALUE;
+
+	/** Greatest number of cities that fits in a single array. */
+	public static final int MAX_CITIES = 65535;
+
+	/** #m_rowOffset[i] + j is the index of the pair (i,j), i &lt; j, in the data array. */
+	private int[] m_rowOffset;
+
+	/** Distances on 16 bits, null when #m_wide is used. */
+	private char[] m_narrow;
+
+	/** Distances on 32 bits, null when #m_narrow is used. */
+	private int[] m_wide;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates an empty store (all distances are 0).
+	 * 
+	 * @param nbCities the number of cities
+	 * @param maxDistance an upper bound of the distances that will be stored,
+	 *        it is used to choose the size of the entries
+	 */
+	public PackedDistanceStore(int nbCities, long maxDistance) {
+		super(nbCities);
+		if (nbCities > MAX_CITIES) {
+			throw new IllegalArgumentException("Error : " + nbCities
+					+ " cities cannot be stored in a packed distance matrix (at most " + MAX_CITIES + ").");
+		}
+		if (maxDistance > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Error : distance " + maxDistance + " cannot be stored on 32 bits.");
+		}
+		m_rowOffset = new int[nbCities];
+		long start = 0;
+		for (int i = 0; i < nbCities; i++) {
+			m_rowOffset[i] = (int) (start - i - 1);
+			start += nbCities - i - 1;
+		}
+		if (maxDistance <= MAX_NARROW) {
+			m_narrow = new char[(int) start];
+		} else {
+			m_wide = new int[(int) start];
+		}
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public long get(int i, int j) {
+		if (i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		} else if (i == j) {
+			return 0;
+		}
+		int index = m_rowOffset[i] + j;
+		return m_wide != null ? m_wide[index] : m_narrow[index];
+	}
+
+	/**
+	 * Sets the distance between i and j (i != j). When the store is on 16 bits
+	 * and the value does not fit, the store is widened to 32 bits. Widening is
+	 * not thread safe: when the store is filled by several threads, the
+	 * maximum distance given to the constructor must be an upper bound.
+	 * 
+	 * @param i first city
+	 * @param j second city
+	 * @param distance the distance between i and j
+	 */
+	public void set(int i, int j, long distance) {
+		if (i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		}
+		int index = m_rowOffset[i] + j;
+		if (m_wide != null) {
+			m_wide[index] = checkWide(distance);
+		} else if (distance >= 0 && distance <= MAX_NARROW) {
+			m_narrow[index] = (char) distance;
+		} else {
+			widen();
+			m_wide[index] = checkWide(distance);
+		}
+	}
+
+	/**
+	 * Moves the distances from 16 bits to 32 bits entries.
+	 */
+	private void widen() {
+		m_wide = new int[m_narrow.length];
+		for (int k = 0; k < m_narrow.length; k++) {
+			m_wide[k] = m_narrow[k];
+		}
+		m_narrow = null;
+	}
+
+	/**
+	 * @param distance a distance
+	 * @return the distance as an int
+	 */
+	private static int checkWide(long distance) {
+		if (distance < 0 || distance > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Error : distance " + distance + " cannot be stored on 32 bits.");
+		}
+		return (int) distance;
+	}
+
+	/**
+	 * Writes the entries of the store at the position of the buffer, and
+	 * moves the position after them.
+	 * @param buffer the buffer, with enough remaining space ({@link #getDataBytes()})
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		if (m_wide != null) {
+			buffer.asIntBuffer().put(m_wide);
+		} else {
+			buffer.asCharBuffer().put(m_narrow);
+		}
+		buffer.position(buffer.position() + (int) getDataBytes());
+	}
+
+	/**
+	 * Reads the entries of the store from the position of the buffer, and
+	 * moves the position after them. The entries must have been written by
+	 * {@link #writeTo(ByteBuffer)} from a store with the same number of cities
+	 * and the same entry size.
+	 * @param buffer the buffer
+	 */
+	public void readFrom(ByteBuffer buffer) {
+		if (m_wide != null) {
+			buffer.asIntBuffer().get(m_wide);
+		} else {
+			buffer.asCharBuffer().get(m_narrow);
+		}
+		buffer.position(buffer.position() + (int) getDataBytes());
+	}
+
+	/** @return the number of bytes used by the entries of the store */
+	public long getDataBytes() {
+		return m_wide != null ? 4L * m_wide.length : 2L * m_narrow.length;
+	}
+
+	@Override
+	public long getMemoryFootprint() {
+		return getDataBytes() + 4L * m_rowOffset.length;
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return `true` if distances are stored on 32 bits, `false` if they are stored on 16 bits */
+	public boolean isWide() {
+		return m_wide != null;
+	}
+}
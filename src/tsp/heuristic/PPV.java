@@ -1,15 +1,26 @@
 package tsp.heuristic;
 
 import tsp.Instance;
+import tsp.spatial.KdTree;
 
 /**
  * This class is a PPV algorithm.
  * The principle is to always add the nearest city in the solution. 
+ * 
+ * For euclidean instances, the nearest unvisited city is found with a k-d tree
+ * from which visited cities are removed, so the solution is built in
+ * O(n log n) instead of O(n^2).
  * @author gauthier.gris
  *
  */
 public class PPV extends AHeuristic{
 
+	/** Nearest unvisited city found by the last range query */
+	private int m_best;
+
+	/** Distance to #m_best */
+	private long m_bestDistance;
+
 	public PPV(Instance instance, String name) throws Exception {
 		super(instance, name);
 	}
@@ -22,13 +33,46 @@ public class PPV extends AHeuristic{
 		
 		super.m_solution.setCityPosition(0, 0);
 		super.m_solution.setCityPosition(0, super.m_solution.getM_nbCities());
+		KdTree tree = m_instance.newSpatialIndex();
+		if (tree == null) {
+			for (int i = 1; i<super.m_solution.getM_nbCities();i++) {
+				super.m_solution.setCityAt(super.m_solution.getPPVSuivant(), i);
+			}
+			return;
+		}
+
+		tree.remove(0);
+		int last = 0;
 		for (int i = 1; i<super.m_solution.getM_nbCities();i++) {
-			super.m_solution.setCityPosition(super.m_solution.getPPVSuivant(), i);
+			int next = nearestUnvisited(tree, last);
+			super.m_solution.setCityAt(next, i);
+			tree.remove(next);
+			last = next;
 		}
-	
-		
 	}
 	
-	
+	/**
+	 * Finds the nearest unvisited city, the one with the smallest number in
+	 * case of ties (as {@link tsp.Solution#getPPVSuivant()}). The nearest city
+	 * for the euclidean distance gives the rounded distance, then the cities in
+	 * the disc that can have the same rounded distance are compared.
+	 * 
+	 * @param tree the k-d tree of the unvisited cities
+	 * @param city the last visited city
+	 * @return the nearest unvisited city
+	 */
+	private int nearestUnvisited(KdTree tree, final int city) {
+		int nearest = tree.nearest(city);
+		m_best = nearest;
+		m_bestDistance = m_instance.distance(city, nearest);
+		tree.range(city, m_instance.getEuclideanRadius(m_bestDistance), j -> {
+			long d = m_instance.distance(city, j);
+			if (d < m_bestDistance || (d == m_bestDistance && j < m_best)) {
+				m_best = j;
+				m_bestDistance = d;
+			}
+		});
+		return m_best;
+	}
 		
 }
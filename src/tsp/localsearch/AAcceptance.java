@@ -0,0 +1,23 @@
+package tsp.localsearch;
+
+/**
+ * This is the abstract class for the acceptance criteria of
+ * {@link IteratedLocalSearch}: after a kick and a local search, it decides
+ * whether the search goes on from the new local optimum or comes back to the
+ * current one.
+ */
+abstract public class AAcceptance {
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * @param candidate cost of the new local optimum
+	 * @param current cost of the current local optimum
+	 * @param best cost of the best solution found
+	 * @param progress elapsed fraction of the time of the search, between 0 and 1
+	 * @return true if the search goes on from the new local optimum
+	 */
+	public abstract boolean accept(long candidate, long current, long best, double progress);
+}
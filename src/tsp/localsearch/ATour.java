@@ -0,0 +1,236 @@
+package tsp.localsearch;
+
+import java.util.Arrays;
+
+import tsp.Solution;
+
+/**
+ * This is the abstract class for the tour representations used by the local
+ * searches. A tour is a cycle over all the cities, it has no first city and
+ * its orientation is not significant: the moves only rely on the successor
+ * and the predecessor of the cities, so a representation can reverse the
+ * orientation of the whole tour when it is cheaper.
+ *
+ * {@link #create(Solution)} chooses the representation from the number of
+ * cities: an {@link ArrayTour} for small instances, a {@link TwoLevelTour}
+ * above #TWO_LEVEL_THRESHOLD cities, where the O(n) reversals of an array
+ * dominate the local searches.
+ *
+ * The moves done by {@link #twoOptMove(int, int, int, int)} can be kept in a
+ * journal (see {@link #startJournal()}), to be undone and done again without
+ * copying the tour.
+ */
+abstract public class ATour {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of cities from which {@link #create(Solution)} returns a {@link TwoLevelTour} */
+	public static final int TWO_LEVEL_THRESHOLD = 30000;
+
+	/** Number of cities in the tour */
+	protected int m_nbCities;
+
+	/** If true, the moves done by {@link #twoOptMove(int, int, int, int)} are kept in #m_journal */
+	private boolean m_journaling;
+
+	/** The journal of the 2-opt moves, 4 cities per move */
+	private int[] m_journal;
+
+	/** Number of cities in #m_journal */
+	private int m_journalSize;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param nbCities the number of cities in the tour
+	 */
+	public ATour(int nbCities) {
+		m_nbCities = nbCities;
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Creates the tour representation suited to the size of the instance.
+	 * @param sol a feasible solution
+	 * @return a tour visiting the cities in the order of sol
+	 */
+	public static ATour create(Solution sol) {
+		if (sol.getM_nbCities() >= TWO_LEVEL_THRESHOLD) {
+			return new TwoLevelTour(sol);
+		}
+		return new ArrayTour(sol);
+	}
+
+	/**
+	 * @param city a city
+	 * @return the city visited after city
+	 */
+	public abstract int next(int city);
+
+	/**
+	 * @param city a city
+	 * @return the city visited before city
+	 */
+	public abstract int prev(int city);
+
+	/**
+	 * @param a a city
+	 * @param b a city
+	 * @param c a city
+	 * @return true if b is on the path going from a to c following the
+	 *         successors (a and c included)
+	 */
+	public abstract boolean between(int a, int b, int c);
+
+	/**
+	 * 2-opt move: replaces the edges (a,b) and (c,d) by the edges (a,c) and
+	 * (b,d), by reversing the path from b to c (or the path from d to a).
+	 * 
+	 * @param a a city
+	 * @param b the city after a
+	 * @param c a city
+	 * @param d the city after c
+	 */
+	public abstract void flip(int a, int b, int c, int d);
+
+	/**
+	 * 2-opt move that does not depend on the orientation of the tour: replaces
+	 * the edges (a,b) and (c,d) by (a,c) and (b,d), where b follows a and d
+	 * follows c in the same direction (both successors or both predecessors).
+	 * 
+	 * @param a a city
+	 * @param b a neighbor of a
+	 * @param c a city
+	 * @param d the neighbor of c in the same direction as b from a
+	 */
+	public void twoOptMove(int a, int b, int c, int d) {
+		if (next(a) == b) {
+			flip(a, b, c, d);
+		} else {
+			flip(b, a, d, c);
+		}
+		if (m_journaling) {
+			if (m_journalSize + 4 > m_journal.length) {
+				m_journal = Arrays.copyOf(m_journal, 2 * m_journal.length);
+			}
+			m_journal[m_journalSize++] = a;
+			m_journal[m_journalSize++] = b;
+			m_journal[m_journalSize++] = c;
+			m_journal[m_journalSize++] = d;
+		}
+	}
+
+	/**
+	 * Keeps the next moves done by {@link #twoOptMove(int, int, int, int)} in
+	 * an empty journal.
+	 */
+	public void startJournal() {
+		if (m_journal == null) {
+			m_journal = new int[256];
+		}
+		m_journaling = true;
+		m_journalSize = 0;
+	}
+
+	/** Stops keeping the moves and empties the journal. */
+	public void stopJournal() {
+		m_journaling = false;
+		m_journalSize = 0;
+	}
+
+	/** Empties the journal, the next moves are still kept. */
+	public void clearJournal() {
+		m_journalSize = 0;
+	}
+
+	/**
+	 * Undoes the moves of the journal, from the last one to the first one.
+	 * The journal is not modified, {@link #redoJournal()} does the moves
+	 * again.
+	 */
+	public void undoJournal() {
+		boolean journaling = m_journaling;
+		m_journaling = false;
+		// After the move (a,b,c,d), the move (a,c,b,d) puts back the edges (a,b) and (c,d)
+		for (int m = m_journalSize - 4; m >= 0; m -= 4) {
+			twoOptMove(m_journal[m], m_journal[m + 2], m_journal[m + 1], m_journal[m + 3]);
+		}
+		m_journaling = journaling;
+	}
+
+	/**
+	 * Does again the moves of the journal, after {@link #undoJournal()}. The
+	 * journal is not modified.
+	 */
+	public void redoJournal() {
+		boolean journaling = m_journaling;
+		m_journaling = false;
+		for (int m = 0; m < m_journalSize; m += 4) {
+			twoOptMove(m_journal[m], m_journal[m + 1], m_journal[m + 2], m_journal[m + 3]);
+		}
+		m_journaling = journaling;
+	}
+
+	/**
+	 * Or-opt move done with 2-opt moves: the segment s1..s2 is removed from
+	 * between p and nx, and inserted between u and v. Along one direction of
+	 * the tour, the cities must be in the order p, s1..s2, nx, ..., u, v, the
+	 * edge (u,v) not touching the segment and v being different from p.
+	 * 
+	 * @param p the city before the segment
+	 * @param s1 the first city of the segment
+	 * @param s2 the last city of the segment
+	 * @param nx the city after the segment
+	 * @param u a city out of the segment
+	 * @param v the city after u
+	 * @param reversed if true the segment is inserted as u, s2..s1, v, 
+	 *        otherwise as u, s1..s2, v
+	 */
+	public void moveSegment(int p, int s1, int s2, int nx, int u, int v, boolean reversed) {
+		// p u..nx s2..s1 v
+		twoOptMove(p, s1, u, v);
+		// p nx..u s2..s1 v
+		if (u != nx) {
+			twoOptMove(p, u, nx, s2);
+		}
+		// p nx..u s1..s2 v
+		if (!reversed && s1 != s2) {
+			twoOptMove(u, s2, s1, v);
+		}
+	}
+
+	/**
+	 * Writes the tour in sol, starting and ending with city 0. The objective
+	 * value of sol is not modified.
+	 * 
+	 * @param sol the solution to fill
+	 */
+	public void toSolution(Solution sol) {
+		int city = 0;
+		for (int position = 0; position < m_nbCities; position++) {
+			sol.setCityAt(city, position);
+			city = next(city);
+		}
+		sol.setCityAt(0, m_nbCities);
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the number of cities in the tour */
+	public int getNbCities() {
+		return m_nbCities;
+	}
+}
@@ -0,0 +1,51 @@
+package tsp.localsearch;
+
+import java.util.Random;
+
+/**
+ * Accepts a new local optimum if it is not worse than the current one, or
+ * otherwise with probability exp(-(candidate - current) / T) as in simulated
+ * annealing. The temperature T decreases linearly from its initial value to 0
+ * over the time of the search.
+ */
+public class AnnealingAcceptance extends AAcceptance {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Temperature at the beginning of the search */
+	private double m_temperature;
+
+	/** Random generator */
+	private Random m_random;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param temperature the temperature at the beginning of the search, in units of the objective
+	 * @param seed the seed of the random generator
+	 */
+	public AnnealingAcceptance(double temperature, long seed) {
+		m_temperature = temperature;
+		m_random = new Random(seed);
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public boolean accept(long candidate, long current, long best, double progress) {
+		if (candidate <= current) {
+			return true;
+		}
+		double temperature = m_temperature * (1 - progress);
+		return temperature > 0 && m_random.nextDouble() < Math.exp((current - candidate) / temperature);
+	}
+}
@@ -0,0 +1,135 @@
+package tsp.localsearch;
+
+import tsp.Solution;
+
+/**
+ * Tour stored as an array of cities together with the position of each city.
+ * next and prev are O(1), a 2-opt move reverses the shorter of the two paths,
+ * so it costs at most n/2 swaps.
+ */
+public class ArrayTour extends ATour {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** #m_tour[p] is the city at position p */
+	private int[] m_tour;
+
+	/** #m_positions[c] is the position of city c in #m_tour */
+	private int[] m_positions;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the tour visiting the cities in the order of sol.
+	 * @param sol a feasible solution
+	 */
+	public ArrayTour(Solution sol) {
+		super(sol.getM_nbCities());
+		m_tour = new int[m_nbCities];
+		m_positions = new int[m_nbCities];
+		for (int position = 0; position < m_nbCities; position++) {
+			int city = sol.cityAt(position);
+			m_tour[position] = city;
+			m_positions[city] = position;
+		}
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public int next(int city) {
+		int position = m_positions[city] + 1;
+		return m_tour[position == m_nbCities ? 0 : position];
+	}
+
+	@Override
+	public int prev(int city) {
+		int position = m_positions[city] - 1;
+		return m_tour[position < 0 ? m_nbCities - 1 : position];
+	}
+
+	@Override
+	public boolean between(int a, int b, int c) {
+		int pa = m_positions[a];
+		int pb = m_positions[b];
+		int pc = m_positions[c];
+		if (pa <= pc) {
+			return pa <= pb && pb <= pc;
+		}
+		return pb >= pa || pb <= pc;
+	}
+
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		int from = m_positions[b];
+		int length = m_positions[c] - from;
+		if (length < 0) {
+			length += m_nbCities;
+		}
+		length++;
+		if (2 * length > m_nbCities) {
+			// The path from d to a is shorter
+			from = m_positions[d];
+			length = m_nbCities - length;
+		}
+		reverse(from, length);
+	}
+
+	/**
+	 * Reverses the path of length cities starting at position from (the path
+	 * can go past the end of the array).
+	 * 
+	 * @param from the position of the first city of the path
+	 * @param length the number of cities of the path
+	 */
+	private void reverse(int from, int length) {
+		int i = from;
+		int j = from + length - 1;
+		if (j >= m_nbCities) {
+			j -= m_nbCities;
+		}
+		for (int swaps = length / 2; swaps > 0; swaps--) {
+			int ci = m_tour[i];
+			int cj = m_tour[j];
+			m_tour[i] = cj;
+			m_positions[cj] = i;
+			m_tour[j] = ci;
+			m_positions[ci] = j;
+			if (++i == m_nbCities) {
+				i = 0;
+			}
+			if (--j < 0) {
+				j = m_nbCities - 1;
+			}
+		}
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/**
+	 * @param city a city
+	 * @return the position of city in the tour
+	 */
+	public int getPosition(int city) {
+		return m_positions[city];
+	}
+
+	/**
+	 * @param position a position between 0 and nbCities-1
+	 * @return the city at position
+	 */
+	public int getCity(int position) {
+		return m_tour[position];
+	}
+}
@@ -0,0 +1,16 @@
+package tsp.localsearch;
+
+/**
+ * Accepts a new local optimum if it is not worse than the current one.
+ */
+public class BetterAcceptance extends AAcceptance {
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public boolean accept(long candidate, long current, long best, double progress) {
+		return candidate <= current;
+	}
+}
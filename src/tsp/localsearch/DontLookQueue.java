@@ -0,0 +1,96 @@
+package tsp.localsearch;
+
+/**
+ * Don't-look bits kept as a FIFO queue of the cities whose bit is off. A local
+ * search pops a city, looks for an improving move around it and, when a move
+ * is applied, pushes back the endpoints of the changed edges. A city that is
+ * not in the queue is not looked at, until one of its edges changes.
+ */
+public class DontLookQueue {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Circular buffer of the queued cities */
+	private int[] m_queue;
+
+	/** #m_inQueue[c] is true if c is in the queue (its don't-look bit is off) */
+	private boolean[] m_inQueue;
+
+	/** Index of the first city of the queue in #m_queue */
+	private int m_head;
+
+	/** Number of cities in the queue */
+	private int m_size;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates an empty queue.
+	 * @param nbCities the number of cities
+	 */
+	public DontLookQueue(int nbCities) {
+		m_queue = new int[nbCities];
+		m_inQueue = new boolean[nbCities];
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Adds city at the end of the queue, if it is not already queued.
+	 * @param city a city
+	 */
+	public void push(int city) {
+		if (m_inQueue[city]) {
+			return;
+		}
+		m_inQueue[city] = true;
+		int tail = m_head + m_size;
+		if (tail >= m_queue.length) {
+			tail -= m_queue.length;
+		}
+		m_queue[tail] = city;
+		m_size++;
+	}
+
+	/**
+	 * Removes the first city of the queue.
+	 * @return the first city of the queue, -1 if the queue is empty
+	 */
+	public int pop() {
+		if (m_size == 0) {
+			return -1;
+		}
+		int city = m_queue[m_head];
+		m_inQueue[city] = false;
+		if (++m_head == m_queue.length) {
+			m_head = 0;
+		}
+		m_size--;
+		return city;
+	}
+
+	/**
+	 * Adds every city of tour, in the order of the tour starting from city 0.
+	 * @param tour a tour
+	 */
+	public void pushAll(ATour tour) {
+		int city = 0;
+		for (int count = tour.getNbCities(); count > 0; count--) {
+			push(city);
+			city = tour.next(city);
+		}
+	}
+
+	/** @return true if no city is queued */
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+}
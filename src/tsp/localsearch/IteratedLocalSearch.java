@@ -0,0 +1,214 @@
+package tsp.localsearch;
+
+import java.util.Random;
+
+import tsp.Instance;
+import tsp.Solution;
+import tsp.metaheuristic.AMetaheuristic;
+
+/**
+ * Iterated local search: the solution is first improved by
+ * {@link LinKernighan}, then until the time limit a kick perturbs the current
+ * local optimum and the local search repairs it.
+ *
+ * The kick is a double bridge on a small part of the tour: the two
+ * consecutive segments B and C of at most #m_maxSegmentLength cities are
+ * swapped, so that A B C D becomes A C B D. This move cannot be undone by a
+ * few 2-opt moves. Only the endpoints of the three changed edges are given
+ * to the don't-look bits of the local search, so a kick and its repair only
+ * look at the part of the tour around the kick, and the tour is never copied.
+ *
+ * An {@link AAcceptance} decides whether the search goes on from the new
+ * local optimum. Otherwise the moves of the kick and of the repair, kept in
+ * the journal of the tour, are undone.
+ */
+public class IteratedLocalSearch extends AMetaheuristic {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Default maximum number of cities of the segments swapped by a kick */
+	public static final int DEFAULT_MAX_SEGMENT_LENGTH = 50;
+
+	/** Time given to the search, in milliseconds */
+	private long m_timeLimit;
+
+	/** Decides whether the search goes on from a new local optimum */
+	private AAcceptance m_acceptance;
+
+	/** The local search that repairs the kicks */
+	private LinKernighan m_localSearch;
+
+	/** Maximum number of cities of the segments swapped by a kick */
+	private int m_maxSegmentLength;
+
+	/** Random generator of the kicks */
+	private Random m_random;
+
+	/** Number of kicks of the last call to {@link #solve(Solution)} */
+	private long m_nbKicks;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the search accepting the local optima that are not worse than the current one.
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 * @param timeLimit the time given to the search, in milliseconds
+	 */
+	public IteratedLocalSearch(Instance instance, String name, long timeLimit) {
+		this(instance, name, timeLimit, new BetterAcceptance(), 0);
+	}
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 * @param timeLimit the time given to the search, in milliseconds
+	 * @param acceptance decides whether the search goes on from a new local optimum
+	 * @param seed the seed of the random generator of the kicks
+	 */
+	public IteratedLocalSearch(Instance instance, String name, long timeLimit, AAcceptance acceptance, long seed) {
+		super(instance, name);
+		m_timeLimit = timeLimit;
+		m_acceptance = acceptance;
+		m_localSearch = new LinKernighan(instance, name);
+		m_maxSegmentLength = DEFAULT_MAX_SEGMENT_LENGTH;
+		m_random = new Random(seed);
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Improves sol until the time limit.
+	 *
+	 * @param sol a feasible solution, it is not modified
+	 * @return the best solution found
+	 */
+	@Override
+	public Solution solve(Solution sol) {
+		long start = System.currentTimeMillis();
+		Solution best = m_localSearch.solve(sol);
+		m_nbKicks = 0;
+		int n = m_instance.getNbCities();
+		if (n < 8) {
+			return best;
+		}
+
+		ATour tour = ATour.create(best);
+		DontLookQueue queue = new DontLookQueue(n);
+		long bestCost = best.getObjectiveValue();
+		long current = bestCost;
+		// If false, best holds the best tour, which is not the current one
+		boolean currentIsBest = true;
+		tour.startJournal();
+
+		long elapsed;
+		while ((elapsed = System.currentTimeMillis() - start) < m_timeLimit) {
+			tour.clearJournal();
+			long candidate = current + kick(tour, queue);
+			candidate -= m_localSearch.improve(tour, queue);
+			m_nbKicks++;
+
+			if (candidate <= bestCost) {
+				bestCost = candidate;
+				current = candidate;
+				currentIsBest = true;
+			} else if (m_acceptance.accept(candidate, current, bestCost, (double) elapsed / m_timeLimit)) {
+				if (currentIsBest) {
+					// The search leaves the best tour: it is written in best first
+					tour.undoJournal();
+					tour.toSolution(best);
+					tour.redoJournal();
+					currentIsBest = false;
+				}
+				current = candidate;
+			} else {
+				tour.undoJournal();
+			}
+		}
+
+		tour.stopJournal();
+		if (currentIsBest) {
+			tour.toSolution(best);
+		}
+		best.setObjectiveValue(bestCost);
+		return best;
+	}
+
+	/**
+	 * Double bridge on a random part of the tour: A B C D becomes A C B D,
+	 * with three 2-opt moves. The endpoints of the changed edges are pushed
+	 * in queue.
+	 *
+	 * @param tour the tour, of at least 8 cities
+	 * @param queue the cities to look at
+	 * @return the change of the cost of the tour
+	 */
+	private long kick(ATour tour, DontLookQueue queue) {
+		int maxLength = Math.max(1, Math.min(m_maxSegmentLength, (tour.getNbCities() - 2) / 3));
+		int p1 = m_random.nextInt(tour.getNbCities());
+		int b1 = tour.next(p1);
+		int p2 = b1;
+		for (int length = m_random.nextInt(maxLength); length > 0; length--) {
+			p2 = tour.next(p2);
+		}
+		int c1 = tour.next(p2);
+		int p3 = c1;
+		for (int length = m_random.nextInt(maxLength); length > 0; length--) {
+			p3 = tour.next(p3);
+		}
+		int d = tour.next(p3);
+		long delta = m_instance.distance(p1, c1) + m_instance.distance(p3, b1) + m_instance.distance(p2, d)
+				- m_instance.distance(p1, b1) - m_instance.distance(p2, c1) - m_instance.distance(p3, d);
+
+		// p1 b1..p2 c1..p3 d -> p1 p3..c1 p2..b1 d -> p1 c1..p3 p2..b1 d -> p1 c1..p3 b1..p2 d
+		tour.twoOptMove(p1, b1, p3, d);
+		tour.twoOptMove(p1, p3, c1, p2);
+		tour.twoOptMove(p3, p2, b1, d);
+
+		queue.push(p1);
+		queue.push(b1);
+		queue.push(p2);
+		queue.push(c1);
+		queue.push(p3);
+		queue.push(d);
+		return delta;
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the number of kicks of the last call to {@link #solve(Solution)} */
+	public long getNbKicks() {
+		return m_nbKicks;
+	}
+
+	/** @return the maximum number of cities of the segments swapped by a kick */
+	public int getMaxSegmentLength() {
+		return m_maxSegmentLength;
+	}
+
+	/**
+	 * @param maxSegmentLength the maximum number of cities of the segments swapped by a kick
+	 */
+	public void setMaxSegmentLength(int maxSegmentLength) {
+		m_maxSegmentLength = Math.max(1, maxSegmentLength);
+	}
+
+	/**
+	 * @param acceptance decides whether the search goes on from a new local optimum
+	 */
+	public void setAcceptance(AAcceptance acceptance) {
+		m_acceptance = acceptance;
+	}
+}
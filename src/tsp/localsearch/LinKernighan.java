@@ -0,0 +1,435 @@
+package tsp.localsearch;
+
+import tsp.Instance;
+import tsp.Solution;
+import tsp.metaheuristic.AMetaheuristic;
+
+/**
+ * Lin-Kernighan local search (variable depth), completed with Or-opt moves.
+ *
+ * A move starts by removing an edge (t1,t2) of a city t1. Then, at each step,
+ * an edge (t2,t3) is added toward a candidate t3 of t2 and the edge (t3,t4)
+ * is removed, t4 being the neighbor of t3 that keeps a tour when (t4,t1) is
+ * added: this is a 2-opt move, applied at once on the tour, and t4 becomes
+ * the new t2. The chain goes on while the partial gain stays positive, up to
+ * a maximum depth. All the candidates t3 are tried at the first step, the
+ * three best ones (largest d(t3,t4) - d(t2,t3)) at the second step and the
+ * best one at the following steps. Once the chain gives a better tour, it is
+ * extended greedily and the tour is rolled back to the best step. An edge
+ * added by the chain is never removed by the same chain.
+ *
+ * When no chain improves the tour from t1, the segments of 1 to
+ * #MAX_SEGMENT_LENGTH cities starting at t1 are moved next to a candidate of
+ * one of their ends (Or-opt). The search is driven by don't-look bits, as in
+ * {@link TwoOpt}.
+ */
+public class LinKernighan extends AMetaheuristic {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Default number of candidates of each city */
+	public static final int DEFAULT_NB_NEIGHBORS = 5;
+
+	/** Default maximum number of 2-opt moves in a chain */
+	public static final int DEFAULT_MAX_DEPTH = 50;
+
+	/** Number of candidates tried at the first levels of a chain, one at the following levels */
+	private static final int[] BREADTH = { Integer.MAX_VALUE, 3 };
+
+	/** Maximum number of cities of a segment moved by an Or-opt move */
+	public static final int MAX_SEGMENT_LENGTH = 3;
+
+	/** Number of candidates of each city */
+	private int m_nbNeighbors;
+
+	/** Maximum number of 2-opt moves in a chain */
+	private int m_maxDepth;
+
+	/** Candidate lists of the instance */
+	private int[] m_neighbors;
+
+	/** The tour being improved */
+	private ATour m_tour;
+
+	/** Cities to look at */
+	private DontLookQueue m_queue;
+
+	/** The 2-opt moves of the current chain, 4 cities per move */
+	private int[] m_moves;
+
+	/** Number of moves in #m_moves */
+	private int m_nbMoves;
+
+	/** Moves that can extend the chain at each level: t3 and t4 */
+	private int[] m_candidates;
+
+	/** Value d(t3,t4) - d(t2,t3) of the moves of #m_candidates */
+	private long[] m_values;
+
+	/** Cities of the segment of the current Or-opt move */
+	private int[] m_segment = new int[MAX_SEGMENT_LENGTH];
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the local search with 5 candidates per city and a depth of 50.
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 */
+	public LinKernighan(Instance instance, String name) {
+		this(instance, name, DEFAULT_NB_NEIGHBORS, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 * @param nbNeighbors number of candidates of each city
+	 * @param maxDepth maximum number of 2-opt moves in a chain
+	 */
+	public LinKernighan(Instance instance, String name, int nbNeighbors, int maxDepth) {
+		super(instance, name);
+		m_nbNeighbors = Math.max(1, Math.min(nbNeighbors, instance.getNbCities() - 1));
+		m_maxDepth = Math.max(1, maxDepth);
+		m_moves = new int[4 * m_maxDepth];
+		// The greedy extension uses the level after the last level of BREADTH
+		int nbLevels = Math.max(m_maxDepth, BREADTH.length + 1);
+		m_candidates = new int[2 * nbLevels * m_nbNeighbors];
+		m_values = new long[nbLevels * m_nbNeighbors];
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Improves sol until no chain and no Or-opt move improves it.
+	 *
+	 * @param sol a feasible solution, it is not modified
+	 * @return a new solution, local optimum for the search
+	 */
+	@Override
+	public Solution solve(Solution sol) {
+		Solution result = sol.copy();
+		long cost = result.getObjectiveValue();
+		int n = m_instance.getNbCities();
+		if (n < 8) {
+			return new TwoOpt(m_instance, m_name).solve(result);
+		}
+
+		ATour tour = ATour.create(result);
+		DontLookQueue queue = new DontLookQueue(n);
+
+		// As in TwoOpt, every city is looked at again when the queue is empty
+		long gain;
+		do {
+			queue.pushAll(tour);
+			gain = improve(tour, queue);
+			cost -= gain;
+		} while (gain > 0);
+
+		tour.toSolution(result);
+		result.setObjectiveValue(cost);
+		return result;
+	}
+
+	/**
+	 * Looks for improving moves from the cities of queue, until it is empty.
+	 * Only the neighborhood of these cities is looked at, which makes the
+	 * search local to the part of the tour that has changed (see
+	 * {@link IteratedLocalSearch}).
+	 *
+	 * @param tour the tour to improve, of at least 8 cities
+	 * @param queue the cities to look at
+	 * @return the gain of the applied moves
+	 */
+	long improve(ATour tour, DontLookQueue queue) {
+		m_tour = tour;
+		m_queue = queue;
+		m_neighbors = m_instance.getNeighbors(m_nbNeighbors);
+		long gain = 0;
+		int t1;
+		while ((t1 = m_queue.pop()) >= 0) {
+			long g = improveCity(t1);
+			if (g == 0) {
+				g = moveSegment(t1);
+			}
+			gain += g;
+		}
+		m_tour = null;
+		m_queue = null;
+		return gain;
+	}
+
+	/**
+	 * Looks for an improving chain starting from t1 and applies it.
+	 *
+	 * @param t1 the first city
+	 * @return the gain of the applied chain, 0 if none has been found
+	 */
+	private long improveCity(int t1) {
+		for (int side = 0; side < 2; side++) {
+			int t2 = side == 0 ? m_tour.next(t1) : m_tour.prev(t1);
+			m_nbMoves = 0;
+			long gain = step(t1, t2, m_instance.distance(t1, t2), 0);
+			if (gain > 0) {
+				return gain;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Extends the chain by one 2-opt move, trying the best #BREADTH[level]
+	 * candidates (one candidate after the last level of #BREADTH). As soon as
+	 * a move gives a better tour, the chain is extended greedily and rolled
+	 * back to its best step.
+	 *
+	 * @param t1 the first city of the chain
+	 * @param t2 the current neighbor of t1, whose edge is to be removed
+	 * @param g the gain of the chain, edge (t1,t2) removed
+	 * @param level the number of moves of the chain
+	 * @return the gain of the applied chain, 0 if the tour has been restored
+	 */
+	private long step(int t1, int t2, long g, int level) {
+		int nbCandidates = collectCandidates(t1, t2, g, level);
+		int first = level * m_nbNeighbors;
+		for (int i = 0; i < nbCandidates; i++) {
+			int t3 = m_candidates[2 * (first + i)];
+			int t4 = m_candidates[2 * (first + i) + 1];
+			long g2 = g + m_values[first + i];
+			applyMove(t1, t2, t4, t3);
+			long closed = g2 - m_instance.distance(t4, t1);
+			if (closed > 0) {
+				return extend(t1, t4, g2, closed);
+			}
+			if (m_nbMoves < m_maxDepth) {
+				long gain = step(t1, t4, g2, level + 1);
+				if (gain > 0) {
+					return gain;
+				}
+			}
+			undoMove();
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores in #m_candidates the moves that can extend the chain, best first
+	 * (largest d(t3,t4) - d(t2,t3)), at most the breadth of the level.
+	 *
+	 * @return the number of stored moves
+	 */
+	private int collectCandidates(int t1, int t2, long g, int level) {
+		int breadth = level < BREADTH.length ? BREADTH[level] : 1;
+		int first = level * m_nbNeighbors;
+		boolean succ = m_tour.next(t1) == t2;
+		int count = 0;
+		int firstNeighbor = t2 * m_nbNeighbors;
+		for (int r = 0; r < m_nbNeighbors; r++) {
+			int t3 = m_neighbors[firstNeighbor + r];
+			long d23 = m_instance.distance(t2, t3);
+			if (g - d23 <= 0) {
+				break;
+			}
+			// t4 is the neighbor of t3 on the side of t2, so that the new tour is a cycle
+			int t4 = succ ? m_tour.prev(t3) : m_tour.next(t3);
+			if (t3 == t1 || t4 == t2 || t4 == t1 || isAdded(t3, t4)) {
+				continue;
+			}
+			long value = m_instance.distance(t3, t4) - d23;
+			// Insertion sort, the moves after the breadth are dropped
+			int i = Math.min(count, breadth - 1);
+			if (count == breadth && value <= m_values[first + i]) {
+				continue;
+			}
+			while (i > 0 && m_values[first + i - 1] < value) {
+				m_values[first + i] = m_values[first + i - 1];
+				m_candidates[2 * (first + i)] = m_candidates[2 * (first + i - 1)];
+				m_candidates[2 * (first + i) + 1] = m_candidates[2 * (first + i - 1) + 1];
+				i--;
+			}
+			m_values[first + i] = value;
+			m_candidates[2 * (first + i)] = t3;
+			m_candidates[2 * (first + i) + 1] = t4;
+			if (count < breadth) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Extends greedily a chain that improves the tour, then rolls the tour
+	 * back to the best step.
+	 *
+	 * @param t1 the first city of the chain
+	 * @param t2 the current neighbor of t1
+	 * @param g the gain of the chain, edge (t1,t2) removed
+	 * @param bestGain the gain of the current tour
+	 * @return the gain of the kept moves
+	 */
+	private long extend(int t1, int t2, long g, long bestGain) {
+		int bestNbMoves = m_nbMoves;
+		while (m_nbMoves < m_maxDepth && collectCandidates(t1, t2, g, BREADTH.length) > 0) {
+			int m = 2 * BREADTH.length * m_nbNeighbors;
+			int t3 = m_candidates[m];
+			int t4 = m_candidates[m + 1];
+			g += m_values[BREADTH.length * m_nbNeighbors];
+			applyMove(t1, t2, t4, t3);
+			long closed = g - m_instance.distance(t4, t1);
+			if (closed > bestGain) {
+				bestGain = closed;
+				bestNbMoves = m_nbMoves;
+			}
+			t2 = t4;
+		}
+		while (m_nbMoves > bestNbMoves) {
+			undoMove();
+		}
+		for (int i = 0; i < 4 * m_nbMoves; i++) {
+			m_queue.push(m_moves[i]);
+		}
+		return bestGain;
+	}
+
+	/**
+	 * Applies the 2-opt move replacing (a,b) and (c,d) by (a,c) and (b,d), and records it.
+	 */
+	private void applyMove(int a, int b, int c, int d) {
+		m_tour.twoOptMove(a, b, c, d);
+		int m = 4 * m_nbMoves;
+		m_moves[m] = a;
+		m_moves[m + 1] = b;
+		m_moves[m + 2] = c;
+		m_moves[m + 3] = d;
+		m_nbMoves++;
+	}
+
+	/**
+	 * Undoes the last recorded move: removes (a,c) and (b,d), restores (a,b) and (c,d).
+	 */
+	private void undoMove() {
+		m_nbMoves--;
+		int m = 4 * m_nbMoves;
+		m_tour.twoOptMove(m_moves[m], m_moves[m + 2], m_moves[m + 1], m_moves[m + 3]);
+	}
+
+	/**
+	 * @return true if the edge (x,y) has been added by the current chain
+	 *         (an edge (b,d) of a recorded move, the edges (a,c) being removed
+	 *         by the next move)
+	 */
+	private boolean isAdded(int x, int y) {
+		for (int m = 0; m < 4 * m_nbMoves; m += 4) {
+			int b = m_moves[m + 1];
+			int d = m_moves[m + 3];
+			if ((b == x && d == y) || (b == y && d == x)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for an improving Or-opt move of a segment starting at t1 and
+	 * applies it.
+	 *
+	 * @param t1 the first city of the segment
+	 * @return the gain of the applied move, 0 if none has been found
+	 */
+	private long moveSegment(int t1) {
+		for (int side = 0; side < 2; side++) {
+			boolean succ = side == 0;
+			int p = succ ? m_tour.prev(t1) : m_tour.next(t1);
+			int s2 = t1;
+			for (int length = 1; length <= MAX_SEGMENT_LENGTH; length++) {
+				if (length > 1) {
+					s2 = succ ? m_tour.next(s2) : m_tour.prev(s2);
+				}
+				m_segment[length - 1] = s2;
+				int nx = succ ? m_tour.next(s2) : m_tour.prev(s2);
+				if (nx == p) {
+					break;
+				}
+				long removeGain = m_instance.distance(p, t1) + m_instance.distance(s2, nx)
+						- m_instance.distance(p, nx);
+				if (removeGain <= 0) {
+					continue;
+				}
+				for (int end = 0; end < 2; end++) {
+					int city = end == 0 ? t1 : s2;
+					int first = city * m_nbNeighbors;
+					for (int r = 0; r < m_nbNeighbors; r++) {
+						int c = m_neighbors[first + r];
+						if (m_instance.distance(city, c) >= removeGain) {
+							break;
+						}
+						if (inSegment(c, length)) {
+							continue;
+						}
+						// Insertion after c, then before c, along the direction of the segment
+						for (int before = 0; before < 2; before++) {
+							int u = before == 0 ? c : (succ ? m_tour.prev(c) : m_tour.next(c));
+							int v = before == 0 ? (succ ? m_tour.next(c) : m_tour.prev(c)) : c;
+							if (v == p || inSegment(u, length) || inSegment(v, length)) {
+								continue;
+							}
+							long removed = removeGain + m_instance.distance(u, v);
+							long reversedGain = removed - m_instance.distance(u, s2) - m_instance.distance(t1, v);
+							long gain = removed - m_instance.distance(u, t1) - m_instance.distance(s2, v);
+							boolean reversed = reversedGain >= gain;
+							gain = Math.max(gain, reversedGain);
+							if (gain > 0) {
+								m_tour.moveSegment(p, t1, s2, nx, u, v, reversed);
+								m_queue.push(p);
+								m_queue.push(t1);
+								m_queue.push(s2);
+								m_queue.push(nx);
+								m_queue.push(u);
+								m_queue.push(v);
+								return gain;
+							}
+						}
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param city a city
+	 * @param length the number of cities of the segment
+	 * @return true if city is one of the first length cities of #m_segment
+	 */
+	private boolean inSegment(int city, int length) {
+		for (int i = 0; i < length; i++) {
+			if (m_segment[i] == city) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the maximum number of 2-opt moves in a chain */
+	public int getMaxDepth() {
+		return m_maxDepth;
+	}
+
+	/** @return the number of candidates of each city */
+	public int getNbNeighbors() {
+		return m_nbNeighbors;
+	}
+}
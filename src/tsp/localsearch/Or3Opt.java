@@ -0,0 +1,260 @@
+package tsp.localsearch;
+
+import tsp.Instance;
+import tsp.Solution;
+import tsp.metaheuristic.AMetaheuristic;
+
+/**
+ * 3-opt local search restricted to the candidate lists ("or-3opt"), working
+ * in place on an {@link ATour} with don't-look bits.
+ *
+ * A move removes the edges (t1,t2), (t3,t4) and (t5,t6) and adds (t2,t3),
+ * (t4,t5) and (t6,t1), where t3 is a candidate of t2 and t5 a candidate of
+ * t4. The partial gains d(t1,t2) - d(t2,t3) and d(t1,t2) - d(t2,t3) +
+ * d(t3,t4) - d(t4,t5) must be positive. Depending on the side of t4 and t6,
+ * the move is:
+ * 	- a 2-opt move (when it already improves the tour after t4),
+ * 	- two sequential 2-opt moves,
+ * 	- the insertion of the segment t2..t5 between t3 and t4 (pure segment
+ * 	  insertion),
+ * 	- the reversal of both segments t2..t6 and t5..t3.
+ *
+ * Gains are computed in O(1) and the first improving move found from a city
+ * is applied.
+ */
+public class Or3Opt extends AMetaheuristic {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of candidates of each city */
+	private int m_nbNeighbors;
+
+	/** Candidate lists of the instance */
+	private int[] m_neighbors;
+
+	/** The tour being improved */
+	private ATour m_tour;
+
+	/** Cities to look at */
+	private DontLookQueue m_queue;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the local search with the default candidate lists.
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 */
+	public Or3Opt(Instance instance, String name) {
+		this(instance, name, Instance.NB_NEIGHBORS);
+	}
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 * @param nbNeighbors number of candidates of each city
+	 */
+	public Or3Opt(Instance instance, String name, int nbNeighbors) {
+		super(instance, name);
+		m_nbNeighbors = Math.max(1, Math.min(nbNeighbors, instance.getNbCities() - 1));
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Applies 3-opt moves until none of the candidate moves improves the tour.
+	 *
+	 * @param sol a feasible solution, it is not modified
+	 * @return a new solution, 3-optimal for the candidate lists
+	 */
+	@Override
+	public Solution solve(Solution sol) {
+		Solution result = sol.copy();
+		long cost = result.getObjectiveValue();
+		int n = m_instance.getNbCities();
+		if (n < 8) {
+			return new TwoOpt(m_instance, m_name).solve(result);
+		}
+
+		m_tour = ATour.create(result);
+		m_neighbors = m_instance.getNeighbors(m_nbNeighbors);
+		m_queue = new DontLookQueue(n);
+
+		// As in TwoOpt, every city is looked at again when the queue is empty
+		long gain;
+		do {
+			gain = 0;
+			m_queue.pushAll(m_tour);
+			int t1;
+			while ((t1 = m_queue.pop()) >= 0) {
+				gain += improveCity(t1);
+			}
+			cost -= gain;
+		} while (gain > 0);
+
+		m_tour.toSolution(result);
+		result.setObjectiveValue(cost);
+		m_tour = null;
+		m_queue = null;
+		return result;
+	}
+
+	/**
+	 * Looks for an improving move removing one of the two edges of t1, and
+	 * applies it.
+	 *
+	 * @param t1 the city looked at
+	 * @return the gain of the applied move, 0 if no move improves the tour
+	 */
+	private long improveCity(int t1) {
+		for (int side = 0; side < 2; side++) {
+			boolean succ = side == 0;
+			int t2 = next(t1, succ);
+			long d12 = m_instance.distance(t1, t2);
+			int first = t2 * m_nbNeighbors;
+			for (int r = 0; r < m_nbNeighbors; r++) {
+				int t3 = m_neighbors[first + r];
+				long g1 = d12 - m_instance.distance(t2, t3);
+				if (g1 <= 0) {
+					break;
+				}
+				if (t3 == t1) {
+					continue;
+				}
+				long gain = sequentialMove(t1, t2, t3, g1, succ);
+				if (gain == 0) {
+					gain = segmentMove(t1, t2, t3, g1, succ);
+				}
+				if (gain > 0) {
+					return gain;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves where t4 is the city before t3: a 2-opt move, or two sequential
+	 * 2-opt moves.
+	 *
+	 * @return the gain of the applied move, 0 if none improves the tour
+	 */
+	private long sequentialMove(int t1, int t2, int t3, long g1, boolean succ) {
+		int t4 = prev(t3, succ);
+		if (t4 == t2) {
+			return 0;
+		}
+		long g2 = g1 + m_instance.distance(t3, t4);
+		long gain = g2 - m_instance.distance(t4, t1);
+		if (gain > 0) {
+			m_tour.twoOptMove(t1, t2, t4, t3);
+			push(t1, t2, t3, t4);
+			return gain;
+		}
+
+		// After the first 2-opt move, t2..t4 is reversed and t4 follows t1
+		int first = t4 * m_nbNeighbors;
+		for (int r = 0; r < m_nbNeighbors; r++) {
+			int t5 = m_neighbors[first + r];
+			long g3 = g2 - m_instance.distance(t4, t5);
+			if (g3 <= 0) {
+				break;
+			}
+			if (t5 == t1 || t5 == t3) {
+				continue;
+			}
+			int t6 = between(t2, t5, t4, succ) ? next(t5, succ) : prev(t5, succ);
+			gain = g3 + m_instance.distance(t5, t6) - m_instance.distance(t6, t1);
+			if (gain > 0) {
+				m_tour.twoOptMove(t1, t2, t4, t3);
+				m_tour.twoOptMove(t1, t4, t6, t5);
+				push(t1, t2, t3, t4);
+				push(t5, t6, t5, t6);
+				return gain;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves where t4 is the city after t3: removing (t1,t2) and (t3,t4) and
+	 * adding (t2,t3) makes a cycle t2..t3, which is opened at an edge (t5,t6)
+	 * and inserted between t4 and t1.
+	 *
+	 * @return the gain of the applied move, 0 if none improves the tour
+	 */
+	private long segmentMove(int t1, int t2, int t3, long g1, boolean succ) {
+		int t4 = next(t3, succ);
+		if (t4 == t1) {
+			return 0;
+		}
+		long g2 = g1 + m_instance.distance(t3, t4);
+		int first = t4 * m_nbNeighbors;
+		for (int r = 0; r < m_nbNeighbors; r++) {
+			int t5 = m_neighbors[first + r];
+			long g3 = g2 - m_instance.distance(t4, t5);
+			if (g3 <= 0) {
+				break;
+			}
+			if (!between(t2, t5, t3, succ)) {
+				continue;
+			}
+			if (t5 != t3) {
+				// t1 t6..t3 t2..t5 t4: the segment t2..t5 is inserted between t3 and t4
+				int t6 = next(t5, succ);
+				long gain = g3 + m_instance.distance(t5, t6) - m_instance.distance(t6, t1);
+				if (gain > 0) {
+					m_tour.moveSegment(t1, t2, t5, t6, t3, t4, false);
+					push(t1, t2, t3, t4);
+					push(t5, t6, t5, t6);
+					return gain;
+				}
+			}
+			if (t5 != t2) {
+				// t1 t6..t2 t3..t5 t4: both segments are reversed
+				int t6 = prev(t5, succ);
+				long gain = g3 + m_instance.distance(t5, t6) - m_instance.distance(t6, t1);
+				if (gain > 0) {
+					m_tour.twoOptMove(t1, t2, t6, t5);
+					m_tour.twoOptMove(t2, t5, t3, t4);
+					push(t1, t2, t3, t4);
+					push(t5, t6, t5, t6);
+					return gain;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/** @return the city after city, following the successors if succ is true, the predecessors otherwise */
+	private int next(int city, boolean succ) {
+		return succ ? m_tour.next(city) : m_tour.prev(city);
+	}
+
+	/** @return the city before city, following the successors if succ is true, the predecessors otherwise */
+	private int prev(int city, boolean succ) {
+		return succ ? m_tour.prev(city) : m_tour.next(city);
+	}
+
+	/** @return true if b is on the path from a to c, following the successors if succ is true, the predecessors otherwise */
+	private boolean between(int a, int b, int c, boolean succ) {
+		return succ ? m_tour.between(a, b, c) : m_tour.between(c, b, a);
+	}
+
+	/** Turns off the don't-look bits of four cities. */
+	private void push(int a, int b, int c, int d) {
+		m_queue.push(a);
+		m_queue.push(b);
+		m_queue.push(c);
+		m_queue.push(d);
+	}
+}
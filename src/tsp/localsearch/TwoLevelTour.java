@@ -0,0 +1,390 @@
+package tsp.localsearch;
+
+import tsp.Solution;
+
+/**
+ * Tour stored as a two-level doubly-linked list: the cities are split into
+ * about sqrt(n) segments of consecutive cities, linked in the order of the
+ * tour, and each segment has a reversal bit telling whether its cities are
+ * visited in the order of their own links or in the opposite one.
+ *
+ * A 2-opt move splits at most two segments so that the reversed path is made
+ * of whole segments, then reverses the order of these segments and toggles
+ * their reversal bits: it costs O(sqrt(n)) instead of O(n) for an
+ * {@link ArrayTour}. A path inside a single segment is reversed city by city.
+ * When the splits have made too many segments, the tour is cut again into
+ * segments of the initial size.
+ *
+ * Inside a segment the cities are numbered with consecutive ids, increasing
+ * along the links, and the segments are numbered in the order of the tour:
+ * {@link #between(int, int, int)} compares these numbers in O(1).
+ */
+public class TwoLevelTour extends ATour {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of cities of a segment when the tour is cut into segments */
+	private int m_segmentSize;
+
+	/** #m_parent[c] is the segment of city c */
+	private int[] m_parent;
+
+	/** #m_id[c] is the number of city c in its segment */
+	private int[] m_id;
+
+	/** #m_next[c] is the city linked after c in its segment (not meaningful for the last one) */
+	private int[] m_next;
+
+	/** #m_prev[c] is the city linked before c in its segment (not meaningful for the first one) */
+	private int[] m_prev;
+
+	/** Number of segments */
+	private int m_nbSegments;
+
+	/** #m_reversed[s] is true if the cities of segment s are visited from the last one to the first one */
+	private boolean[] m_reversed;
+
+	/** #m_first[s] is the city of segment s with the smallest id */
+	private int[] m_first;
+
+	/** #m_last[s] is the city of segment s with the largest id */
+	private int[] m_last;
+
+	/** Gap between the ranks of two consecutive segments when they are numbered again */
+	private static final int RANK_GAP = 1 << 10;
+
+	/** #m_rank[s] increases with the position of segment s in the tour (the numbers are not consecutive) */
+	private int[] m_rank;
+
+	/** Cities in the order of the tour, used when the tour is cut again */
+	private int[] m_buffer;
+
+	/** #m_segmentNext[s] is the segment visited after s */
+	private int[] m_segmentNext;
+
+	/** #m_segmentPrev[s] is the segment visited before s */
+	private int[] m_segmentPrev;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the tour visiting the cities in the order of sol.
+	 * @param sol a feasible solution
+	 */
+	public TwoLevelTour(Solution sol) {
+		super(sol.getM_nbCities());
+		int n = m_nbCities;
+		m_segmentSize = Math.max(1, (int) Math.sqrt(n));
+		m_parent = new int[n];
+		m_id = new int[n];
+		m_next = new int[n];
+		m_prev = new int[n];
+
+		// Every move adds at most two segments, the tour is cut again when
+		// there is no room for them
+		int capacity = 3 * ((n + m_segmentSize - 1) / m_segmentSize) + 2;
+		m_reversed = new boolean[capacity];
+		m_first = new int[capacity];
+		m_last = new int[capacity];
+		m_rank = new int[capacity];
+		m_segmentNext = new int[capacity];
+		m_segmentPrev = new int[capacity];
+
+		m_buffer = new int[n];
+		for (int position = 0; position < n; position++) {
+			m_buffer[position] = sol.cityAt(position);
+		}
+		build();
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	public int next(int city) {
+		int segment = m_parent[city];
+		if (m_reversed[segment]) {
+			return city == m_first[segment] ? head(m_segmentNext[segment]) : m_prev[city];
+		}
+		return city == m_last[segment] ? head(m_segmentNext[segment]) : m_next[city];
+	}
+
+	@Override
+	public int prev(int city) {
+		int segment = m_parent[city];
+		if (m_reversed[segment]) {
+			return city == m_last[segment] ? tail(m_segmentPrev[segment]) : m_next[city];
+		}
+		return city == m_first[segment] ? tail(m_segmentPrev[segment]) : m_prev[city];
+	}
+
+	@Override
+	public boolean between(int a, int b, int c) {
+		long sa = sequence(a);
+		long sb = sequence(b);
+		long sc = sequence(c);
+		if (sa <= sc) {
+			return sa <= sb && sb <= sc;
+		}
+		return sb >= sa || sb <= sc;
+	}
+
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		if (a == c || b == c) {
+			return;
+		}
+
+		// A path inside a segment is reversed city by city
+		if (m_parent[b] == m_parent[c] && order(b) <= order(c)) {
+			reverseInside(m_parent[b], b, c);
+			return;
+		}
+		if (m_parent[d] == m_parent[a] && order(d) <= order(a)) {
+			reverseInside(m_parent[d], d, a);
+			return;
+		}
+
+		if (m_nbSegments + 2 > m_rank.length) {
+			int city = 0;
+			for (int position = 0; position < m_nbCities; position++) {
+				m_buffer[position] = city;
+				city = next(city);
+			}
+			build();
+		}
+
+		// b becomes the first city of its segment and c the last one of its
+		// segment, so that both paths b..c and d..a are made of whole segments
+		if (b != head(m_parent[b])) {
+			split(m_parent[b], b);
+		}
+		if (d != head(m_parent[d])) {
+			split(m_parent[d], d);
+		}
+
+		// The path with fewer segments is reversed, both are walked together
+		int from = m_parent[b];
+		int to = m_parent[c];
+		int otherFrom = m_parent[d];
+		int otherTo = m_parent[a];
+		int segment = from;
+		int other = otherFrom;
+		int length = 1;
+		while (segment != to && other != otherTo) {
+			segment = m_segmentNext[segment];
+			other = m_segmentNext[other];
+			length++;
+		}
+		if (segment == to) {
+			reverseSegments(from, to, length);
+		} else {
+			reverseSegments(otherFrom, otherTo, length);
+		}
+	}
+
+	/**
+	 * Cuts the tour into segments of #m_segmentSize cities.
+	 */
+	private void build() {
+		int[] cities = m_buffer;
+		int n = m_nbCities;
+		m_nbSegments = (n + m_segmentSize - 1) / m_segmentSize;
+		for (int segment = 0; segment < m_nbSegments; segment++) {
+			int from = segment * m_segmentSize;
+			int to = Math.min(n, from + m_segmentSize) - 1;
+			for (int position = from; position <= to; position++) {
+				int city = cities[position];
+				m_parent[city] = segment;
+				m_id[city] = position;
+				m_next[city] = position < to ? cities[position + 1] : -1;
+				m_prev[city] = position > from ? cities[position - 1] : -1;
+			}
+			m_reversed[segment] = false;
+			m_first[segment] = cities[from];
+			m_last[segment] = cities[to];
+			m_rank[segment] = segment * RANK_GAP;
+			m_segmentNext[segment] = segment + 1 < m_nbSegments ? segment + 1 : 0;
+			m_segmentPrev[segment] = segment > 0 ? segment - 1 : m_nbSegments - 1;
+		}
+	}
+
+	/**
+	 * Splits segment in two just before city, which becomes the first city of
+	 * its segment in the order of the tour. The cities of the smaller part
+	 * are moved to a new segment.
+	 *
+	 * @param segment a segment
+	 * @param city a city of segment, which is not the first one in the order of the tour
+	 */
+	private void split(int segment, int city) {
+		boolean reversed = m_reversed[segment];
+		// The segment is cut between the links low..lowEnd and highStart..high
+		int lowEnd = reversed ? city : m_prev[city];
+		int highStart = reversed ? m_next[city] : city;
+		int low = m_first[segment];
+		int high = m_last[segment];
+		int lowSize = m_id[lowEnd] - m_id[low] + 1;
+		int highSize = m_id[high] - m_id[highStart] + 1;
+
+		int created = m_nbSegments++;
+		m_reversed[created] = reversed;
+		// The low part comes first in the tour if the segment is not reversed
+		boolean createdFirst;
+		if (lowSize <= highSize) {
+			setParent(low, lowEnd, created);
+			m_first[created] = low;
+			m_last[created] = lowEnd;
+			m_first[segment] = highStart;
+			createdFirst = !reversed;
+		} else {
+			setParent(highStart, high, created);
+			m_first[created] = highStart;
+			m_last[created] = high;
+			m_last[segment] = lowEnd;
+			createdFirst = reversed;
+		}
+
+		int before = createdFirst ? m_segmentPrev[segment] : segment;
+		int after = createdFirst ? segment : m_segmentNext[segment];
+		m_segmentNext[before] = created;
+		m_segmentPrev[created] = before;
+		m_segmentNext[created] = after;
+		m_segmentPrev[after] = created;
+
+		// The new segment takes a rank between the ranks of its neighbors, if
+		// there is one left
+		int rankBefore = m_rank[before];
+		int rankAfter = m_rank[after];
+		if (rankBefore < rankAfter - 1) {
+			m_rank[created] = (rankBefore + rankAfter) >>> 1;
+		} else if (rankBefore > rankAfter && rankBefore <= Integer.MAX_VALUE - RANK_GAP) {
+			m_rank[created] = rankBefore + RANK_GAP;
+		} else {
+			int rank = 0;
+			int current = created;
+			do {
+				m_rank[current] = rank;
+				rank += RANK_GAP;
+				current = m_segmentNext[current];
+			} while (current != created);
+		}
+	}
+
+	/**
+	 * Reverses the order of the segments from..to and their orientation.
+	 *
+	 * @param from the first segment of the path
+	 * @param to the last segment of the path, the path does not contain all the segments
+	 * @param length the number of segments from from to to
+	 */
+	private void reverseSegments(int from, int to, int length) {
+		int before = m_segmentPrev[from];
+		int after = m_segmentNext[to];
+
+		// The segments keep the same ranks, in the reverse order
+		int left = from;
+		int right = to;
+		for (int count = length / 2; count > 0; count--) {
+			int rank = m_rank[left];
+			m_rank[left] = m_rank[right];
+			m_rank[right] = rank;
+			left = m_segmentNext[left];
+			right = m_segmentPrev[right];
+		}
+
+		int segment = from;
+		for (int count = 0; count < length; count++) {
+			int next = m_segmentNext[segment];
+			m_segmentNext[segment] = m_segmentPrev[segment];
+			m_segmentPrev[segment] = next;
+			m_reversed[segment] = !m_reversed[segment];
+			segment = next;
+		}
+		m_segmentNext[before] = to;
+		m_segmentPrev[to] = before;
+		m_segmentNext[from] = after;
+		m_segmentPrev[after] = from;
+	}
+
+	/**
+	 * Reverses the path from b to c, both in segment, with b before c in the
+	 * order of the tour.
+	 *
+	 * @param segment a segment
+	 * @param b the first city of the path
+	 * @param c the last city of the path
+	 */
+	private void reverseInside(int segment, int b, int c) {
+		int low = m_reversed[segment] ? c : b;
+		int high = m_reversed[segment] ? b : c;
+		int before = low == m_first[segment] ? -1 : m_prev[low];
+		int after = high == m_last[segment] ? -1 : m_next[high];
+		int ids = m_id[low] + m_id[high];
+		int city = low;
+		while (true) {
+			int next = m_next[city];
+			m_next[city] = m_prev[city];
+			m_prev[city] = next;
+			m_id[city] = ids - m_id[city];
+			if (city == high) {
+				break;
+			}
+			city = next;
+		}
+		m_prev[high] = before;
+		m_next[low] = after;
+		if (before < 0) {
+			m_first[segment] = high;
+		} else {
+			m_next[before] = high;
+		}
+		if (after < 0) {
+			m_last[segment] = low;
+		} else {
+			m_prev[after] = low;
+		}
+	}
+
+	/**
+	 * Moves the cities linked from first to last to segment.
+	 * @param first the first city
+	 * @param last the last city
+	 * @param segment the new segment of the cities
+	 */
+	private void setParent(int first, int last, int segment) {
+		int city = first;
+		m_parent[city] = segment;
+		while (city != last) {
+			city = m_next[city];
+			m_parent[city] = segment;
+		}
+	}
+
+	/** @return the first city of segment in the order of the tour */
+	private int head(int segment) {
+		return m_reversed[segment] ? m_last[segment] : m_first[segment];
+	}
+
+	/** @return the last city of segment in the order of the tour */
+	private int tail(int segment) {
+		return m_reversed[segment] ? m_first[segment] : m_last[segment];
+	}
+
+	/** @return the number of city in its segment, increasing in the order of the tour */
+	private int order(int city) {
+		return m_reversed[m_parent[city]] ? -m_id[city] : m_id[city];
+	}
+
+	/** @return a number increasing in the order of the tour from the first city of the segment of rank 0 */
+	private long sequence(int city) {
+		return ((long) m_rank[m_parent[city]] << 32) + order(city);
+	}
+}
@@ -0,0 +1,185 @@
+package tsp.localsearch;
+
+import tsp.Instance;
+import tsp.Solution;
+import tsp.metaheuristic.AMetaheuristic;
+
+/**
+ * 2-opt local search working in place on an {@link ATour}.
+ *
+ * Only the moves adding an edge between a city and one of its nearest
+ * neighbors are looked at (candidate lists of the instance), and the search
+ * is driven by don't-look bits: a city is looked at again only when one of
+ * its edges has changed. For each city t1 and each of its two tour neighbors
+ * t2, the candidates t3 of t2 are scanned while d(t1,t2) - d(t2,t3) > 0,
+ * then the edges (t1,t2) and (t3,t4) are replaced by (t2,t3) and (t1,t4).
+ *
+ * With first improvement, the first improving move found around a city is
+ * applied. With best improvement, the best move around the city is applied.
+ * A 2-opt local optimum is usually reached in a few milliseconds for
+ * thousands of cities.
+ */
+public class TwoOpt extends AMetaheuristic {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** If true the best move around a city is applied, otherwise the first improving one */
+	private boolean m_bestImprovement;
+
+	/** Number of candidates of each city */
+	private int m_nbNeighbors;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates a first improvement 2-opt using the default candidate lists.
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 */
+	public TwoOpt(Instance instance, String name) {
+		this(instance, name, false, Instance.NB_NEIGHBORS);
+	}
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the metaheuristic
+	 * @param bestImprovement if true the best move around a city is applied, otherwise the first improving one
+	 * @param nbNeighbors number of candidates of each city
+	 */
+	public TwoOpt(Instance instance, String name, boolean bestImprovement, int nbNeighbors) {
+		super(instance, name);
+		m_bestImprovement = bestImprovement;
+		m_nbNeighbors = Math.max(1, Math.min(nbNeighbors, instance.getNbCities() - 1));
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Applies 2-opt moves until none of the candidate moves improves the
+	 * tour.
+	 *
+	 * @param sol a feasible solution, it is not modified
+	 * @return a new solution, 2-optimal for the candidate lists
+	 */
+	@Override
+	public Solution solve(Solution sol) {
+		Solution result = sol.copy();
+		long cost = result.getObjectiveValue();
+		int n = m_instance.getNbCities();
+		if (n < 5) {
+			return result;
+		}
+
+		ATour tour = ATour.create(result);
+		int[] neighbors = m_instance.getNeighbors(m_nbNeighbors);
+		DontLookQueue queue = new DontLookQueue(n);
+
+		// A reversal changes the side of t3 on which t2 lies for the cities of
+		// the reversed path, without changing their edges: when the queue is
+		// empty every city is looked at again, until a round finds no move
+		long gain;
+		do {
+			gain = 0;
+			queue.pushAll(tour);
+			int t1;
+			while ((t1 = queue.pop()) >= 0) {
+				gain += improveCity(tour, neighbors, queue, t1);
+			}
+			cost -= gain;
+		} while (gain > 0);
+
+		tour.toSolution(result);
+		result.setObjectiveValue(cost);
+		return result;
+	}
+
+	/**
+	 * Looks for an improving move removing one of the two edges of t1, and
+	 * applies it.
+	 *
+	 * @param tour the tour
+	 * @param neighbors the candidate lists
+	 * @param queue the cities to look at
+	 * @param t1 the city looked at
+	 * @return the gain of the applied move, 0 if no move improves the tour
+	 */
+	private long improveCity(ATour tour, int[] neighbors, DontLookQueue queue, int t1) {
+		long bestGain = 0;
+		int bestT2 = -1;
+		int bestT3 = -1;
+		int bestT4 = -1;
+		boolean bestSucc = false;
+
+		for (int direction = 0; direction < 2; direction++) {
+			boolean succ = direction == 0;
+			int t2 = succ ? tour.next(t1) : tour.prev(t1);
+			long g1 = m_instance.distance(t1, t2);
+			int first = t2 * m_nbNeighbors;
+			for (int r = 0; r < m_nbNeighbors; r++) {
+				int t3 = neighbors[first + r];
+				long g2 = g1 - m_instance.distance(t2, t3);
+				if (g2 <= 0) {
+					break;
+				}
+				// t4 is the neighbor of t3 on the side of t2, so that the new tour is a cycle
+				int t4 = succ ? tour.prev(t3) : tour.next(t3);
+				if (t3 == t1 || t4 == t2) {
+					continue;
+				}
+				long gain = g2 + m_instance.distance(t3, t4) - m_instance.distance(t4, t1);
+				if (gain > bestGain) {
+					bestGain = gain;
+					bestT2 = t2;
+					bestT3 = t3;
+					bestT4 = t4;
+					bestSucc = succ;
+					if (!m_bestImprovement) {
+						break;
+					}
+				}
+			}
+			if (bestGain > 0 && !m_bestImprovement) {
+				break;
+			}
+		}
+
+		if (bestGain > 0) {
+			if (bestSucc) {
+				tour.flip(t1, bestT2, bestT4, bestT3);
+			} else {
+				tour.flip(bestT2, t1, bestT3, bestT4);
+			}
+			queue.push(t1);
+			queue.push(bestT2);
+			queue.push(bestT3);
+			queue.push(bestT4);
+		}
+		return bestGain;
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return true if the best move around a city is applied, false for the first improving one */
+	public boolean isBestImprovement() {
+		return m_bestImprovement;
+	}
+
+	/**
+	 * @param bestImprovement if true the best move around a city is applied, otherwise the first improving one
+	 */
+	public void setBestImprovement(boolean bestImprovement) {
+		m_bestImprovement = bestImprovement;
+	}
+}
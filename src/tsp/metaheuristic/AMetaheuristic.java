@@ -31,7 +31,7 @@ abstract public class AMetaheuristic {
 	 * @param instance the instance of the problem
 	 * @param name the name of the metaheuristic
 	 */
-	public AMetaheuristic(Instance instance, String name) throws Exception {
+	public AMetaheuristic(Instance instance, String name) {
 		m_instance = instance;
 		m_name = name;
 	}
@@ -0,0 +1,421 @@
+package tsp.metaheuristic;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import tsp.Instance;
+
+/**
+ * Edge assembly crossover (EAX), in its single AB-cycle version.
+ *
+ * The edges of the two parents A and B that are not common to both are
+ * split into AB-cycles: cycles alternating an edge of A and an edge of B.
+ * The child is A where the edges of A of one random AB-cycle are replaced by
+ * its edges of B. This keeps every city of degree 2 but may cut the tour into
+ * subtours, which are merged one at a time: the smallest subtour is joined to
+ * another one by the cheapest exchange of two edges, looking for the second
+ * edge around the candidates of the cities of the subtour.
+ *
+ * The tours are read and written in the arrays of {@link Population}: the
+ * tour at index debut of an array is array[debut] to array[debut+n], with
+ * city 0 at both ends. All the work arrays are allocated once, so two
+ * threads need two objects.
+ */
+public class EdgeAssemblyCrossover {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of candidates of each city used to merge the subtours */
+	private static final int NB_CANDIDATES = 10;
+
+	/** Data of the problem */
+	private Instance m_instance;
+
+	/** Number of cities */
+	private int m_nbCities;
+
+	/** Number of candidates of each city */
+	private int m_nbCandidates;
+
+	/** Candidate lists of the instance */
+	private int[] m_candidates;
+
+	/** #m_linksA[2c] and #m_linksA[2c+1] are the neighbors of city c in A */
+	private int[] m_linksA;
+
+	/** #m_linksB[2c] and #m_linksB[2c+1] are the neighbors of city c in B */
+	private int[] m_linksB;
+
+	/** Neighbors of the cities in the child, with the same layout */
+	private int[] m_links;
+
+	/** Edges of A not in B which are not in an AB-cycle yet, same layout, #m_nbLeftA[c] for city c */
+	private int[] m_leftA;
+
+	/** Number of edges of #m_leftA for each city */
+	private int[] m_nbLeftA;
+
+	/** Edges of B not in A which are not in an AB-cycle yet */
+	private int[] m_leftB;
+
+	/** Number of edges of #m_leftB for each city */
+	private int[] m_nbLeftB;
+
+	/** Path alternating edges of A and B, its edge k is in A if k is even */
+	private int[] m_path;
+
+	/** #m_pathIndex[2c+p] is the index of city c in #m_path with the parity p, if it is still there */
+	private int[] m_pathIndex;
+
+	/** Cities of the AB-cycles one after the other, the first edge of each cycle is in A */
+	private int[] m_cycles;
+
+	/** The cycle i is #m_cycles[#m_cycleStart[i]] to #m_cycles[#m_cycleStart[i+1]-1] */
+	private int[] m_cycleStart;
+
+	/** #m_subtour[c] is the subtour of city c in the child */
+	private int[] m_subtour;
+
+	/** Random generator of the current crossover */
+	private SplittableRandom m_random;
+
+	/** Number of cities of each subtour */
+	private int[] m_subtourSize;
+
+	/** A city of each subtour */
+	private int[] m_subtourCity;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 */
+	public EdgeAssemblyCrossover(Instance instance) {
+		m_instance = instance;
+		int n = instance.getNbCities();
+		m_nbCities = n;
+		m_nbCandidates = Math.max(1, Math.min(NB_CANDIDATES, n - 1));
+		m_candidates = instance.getNeighbors(m_nbCandidates);
+		m_linksA = new int[2 * n];
+		m_linksB = new int[2 * n];
+		m_links = new int[2 * n];
+		m_leftA = new int[2 * n];
+		m_nbLeftA = new int[n];
+		m_leftB = new int[2 * n];
+		m_nbLeftB = new int[n];
+		m_path = new int[2 * n + 1];
+		m_pathIndex = new int[2 * n];
+		m_cycles = new int[2 * n];
+		m_cycleStart = new int[n + 1];
+		m_subtour = new int[n];
+		m_subtourSize = new int[n];
+		m_subtourCity = new int[n];
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Creates a child of the tours A and B.
+	 *
+	 * @param tours the array of the parents
+	 * @param a the index of the first city of A in tours
+	 * @param b the index of the first city of B in tours
+	 * @param child the array of the child
+	 * @param c the index of the first city of the child in child
+	 * @param random the random generator choosing the edges of the walks and the AB-cycle
+	 * @return the cost of the child
+	 */
+	public long cross(int[] tours, int a, int b, int[] child, int c, SplittableRandom random) {
+		m_random = random;
+		links(tours, a, m_linksA);
+		links(tours, b, m_linksB);
+		int nbCycles = buildCycles();
+		System.arraycopy(m_linksA, 0, m_links, 0, 2 * m_nbCities);
+		if (nbCycles > 0) {
+			int cycle = random.nextInt(nbCycles);
+			applyCycle(m_cycleStart[cycle], m_cycleStart[cycle + 1]);
+			mergeSubtours();
+		}
+
+		// The child is written from city 0
+		long cost = 0;
+		int previous = m_links[1];
+		int city = 0;
+		for (int position = 0; position < m_nbCities; position++) {
+			child[c + position] = city;
+			int next = m_links[2 * city] == previous ? m_links[2 * city + 1] : m_links[2 * city];
+			cost += m_instance.distance(city, next);
+			previous = city;
+			city = next;
+		}
+		child[c + m_nbCities] = 0;
+		return cost;
+	}
+
+	/**
+	 * Fills links with the neighbors of the cities in a tour.
+	 */
+	private void links(int[] tours, int debut, int[] links) {
+		for (int position = 0; position < m_nbCities; position++) {
+			int city = tours[debut + position];
+			links[2 * city] = position == 0 ? tours[debut + m_nbCities - 1] : tours[debut + position - 1];
+			links[2 * city + 1] = tours[debut + position + 1];
+		}
+	}
+
+	/**
+	 * Splits the edges of A and B which are not common to both into
+	 * AB-cycles, by a random walk alternating their edges: when the walk comes
+	 * back to a city of the path with the same parity, the end of the path
+	 * since this city is an AB-cycle and is taken out of the path.
+	 *
+	 * @return the number of AB-cycles
+	 */
+	private int buildCycles() {
+		int n = m_nbCities;
+		for (int city = 0; city < n; city++) {
+			m_nbLeftA[city] = 0;
+			m_nbLeftB[city] = 0;
+			for (int side = 0; side < 2; side++) {
+				int other = m_linksA[2 * city + side];
+				if (m_linksB[2 * city] != other && m_linksB[2 * city + 1] != other) {
+					m_leftA[2 * city + m_nbLeftA[city]++] = other;
+				}
+				other = m_linksB[2 * city + side];
+				if (m_linksA[2 * city] != other && m_linksA[2 * city + 1] != other) {
+					m_leftB[2 * city + m_nbLeftB[city]++] = other;
+				}
+			}
+			m_pathIndex[2 * city] = -1;
+			m_pathIndex[2 * city + 1] = -1;
+		}
+
+		int nbCycles = 0;
+		m_cycleStart[0] = 0;
+		int size = 0;
+		int start = 0;
+		while (true) {
+			if (size == 0) {
+				// A new walk starts from a city with an edge of A left
+				while (start < n && m_nbLeftA[start] == 0) {
+					start++;
+				}
+				if (start == n) {
+					break;
+				}
+				m_path[0] = start;
+				m_pathIndex[2 * start] = 0;
+				size = 1;
+			}
+			int last = size - 1;
+			int city = m_path[last];
+			boolean inA = (last & 1) == 0;
+			int next = inA ? removeEdge(m_leftA, m_nbLeftA, city) : removeEdge(m_leftB, m_nbLeftB, city);
+			m_path[size] = next;
+			int parity = size & 1;
+			int index = m_pathIndex[2 * next + parity];
+			if (index >= 0 && index < size && m_path[index] == next) {
+				// m_path[index..size-1] is an AB-cycle, it is stored from an edge of A
+				int end = m_cycleStart[nbCycles];
+				int from = (index & 1) == 0 ? index : index + 1;
+				for (int k = from; k < size; k++) {
+					m_cycles[end++] = m_path[k];
+				}
+				for (int k = index; k < from; k++) {
+					m_cycles[end++] = m_path[k];
+				}
+				nbCycles++;
+				m_cycleStart[nbCycles] = end;
+				size = index == 0 && m_nbLeftA[next] == 0 ? 0 : index + 1;
+			} else {
+				m_pathIndex[2 * next + parity] = size;
+				size++;
+			}
+		}
+		return nbCycles;
+	}
+
+	/**
+	 * Removes a random edge of city from the edges left (A or B).
+	 *
+	 * @return the other end of the edge
+	 */
+	private int removeEdge(int[] left, int[] nbLeft, int city) {
+		int count = nbLeft[city];
+		int rank = count == 1 ? 0 : m_random.nextInt(count);
+		int other = left[2 * city + rank];
+		left[2 * city + rank] = left[2 * city + count - 1];
+		nbLeft[city] = count - 1;
+
+		int otherCount = nbLeft[other];
+		int otherRank = left[2 * other] == city ? 0 : 1;
+		left[2 * other + otherRank] = left[2 * other + otherCount - 1];
+		nbLeft[other] = otherCount - 1;
+		return other;
+	}
+
+	/**
+	 * Replaces in the child the edges of A of an AB-cycle by its edges of B.
+	 *
+	 * @param from the index of the first city of the cycle in #m_cycles
+	 * @param to the index after its last city
+	 */
+	private void applyCycle(int from, int to) {
+		for (int k = from; k < to; k += 2) {
+			int u = m_cycles[k];
+			int v = m_cycles[k + 1];
+			unlink(u, v);
+			unlink(v, u);
+		}
+		for (int k = from + 1; k < to; k += 2) {
+			int u = m_cycles[k];
+			int v = k + 1 < to ? m_cycles[k + 1] : m_cycles[from];
+			link(u, v);
+			link(v, u);
+		}
+	}
+
+	/** Removes v from the neighbors of u in the child. */
+	private void unlink(int u, int v) {
+		m_links[m_links[2 * u] == v ? 2 * u : 2 * u + 1] = -1;
+	}
+
+	/** Adds v to the neighbors of u in the child, which has a free place. */
+	private void link(int u, int v) {
+		m_links[m_links[2 * u] == -1 ? 2 * u : 2 * u + 1] = v;
+	}
+
+	/** @return the neighbor of city in the child which is not other */
+	private int other(int city, int other) {
+		return m_links[2 * city] == other ? m_links[2 * city + 1] : m_links[2 * city];
+	}
+
+	/**
+	 * Merges the subtours of the child until it is a tour.
+	 */
+	private void mergeSubtours() {
+		int n = m_nbCities;
+		Arrays.fill(m_subtour, -1);
+		int nbSubtours = 0;
+		for (int first = 0; first < n; first++) {
+			if (m_subtour[first] >= 0) {
+				continue;
+			}
+			int size = 0;
+			int previous = m_links[2 * first];
+			int city = first;
+			do {
+				m_subtour[city] = nbSubtours;
+				size++;
+				int next = other(city, previous);
+				previous = city;
+				city = next;
+			} while (city != first);
+			m_subtourSize[nbSubtours] = size;
+			m_subtourCity[nbSubtours] = first;
+			nbSubtours++;
+		}
+
+		// The merged subtours keep their number with a size of 0
+		for (int left = nbSubtours; left > 1; left--) {
+			int smallest = -1;
+			for (int s = 0; s < nbSubtours; s++) {
+				if (m_subtourSize[s] > 0 && (smallest < 0 || m_subtourSize[s] < m_subtourSize[smallest])) {
+					smallest = s;
+				}
+			}
+			if (!merge(smallest, false)) {
+				merge(smallest, true);
+			}
+		}
+	}
+
+	/**
+	 * Joins a subtour to another one with the cheapest exchange of an edge
+	 * (u,u2) of the subtour and an edge (v,v2) of another one.
+	 *
+	 * @param subtour the subtour
+	 * @param all if false v is a candidate of u, otherwise any city of another subtour
+	 * @return false if no edge (v,v2) was found
+	 */
+	private boolean merge(int subtour, boolean all) {
+		long bestCost = Long.MAX_VALUE;
+		int bestU = -1;
+		int bestU2 = -1;
+		int bestV = -1;
+		int bestV2 = -1;
+		int first = m_subtourCity[subtour];
+		int previous = m_links[2 * first];
+		int u = first;
+		do {
+			int u2 = other(u, previous);
+			long du = m_instance.distance(u, u2);
+			int count = all ? m_nbCities : m_nbCandidates;
+			for (int r = 0; r < count; r++) {
+				int v = all ? r : m_candidates[u * m_nbCandidates + r];
+				if (m_subtour[v] == subtour) {
+					continue;
+				}
+				long duv = m_instance.distance(u, v);
+				for (int side = 0; side < 2; side++) {
+					int v2 = m_links[2 * v + side];
+					long dv = du + m_instance.distance(v, v2);
+					// (u,v) and (u2,v2), or (u,v2) and (u2,v)
+					long cost = duv + m_instance.distance(u2, v2) - dv;
+					if (cost < bestCost) {
+						bestCost = cost;
+						bestU = u;
+						bestU2 = u2;
+						bestV = v;
+						bestV2 = v2;
+					}
+					cost = m_instance.distance(u, v2) + m_instance.distance(u2, v) - dv;
+					if (cost < bestCost) {
+						bestCost = cost;
+						bestU = u;
+						bestU2 = u2;
+						bestV = v2;
+						bestV2 = v;
+					}
+				}
+			}
+			previous = u;
+			u = u2;
+		} while (u != first);
+		if (bestU < 0) {
+			return false;
+		}
+
+		// The cities of the subtour join the other one
+		int target = m_subtour[bestV];
+		previous = m_links[2 * first];
+		u = first;
+		do {
+			m_subtour[u] = target;
+			int next = other(u, previous);
+			previous = u;
+			u = next;
+		} while (u != first);
+		m_subtourSize[target] += m_subtourSize[subtour];
+		m_subtourSize[subtour] = 0;
+
+		unlink(bestU, bestU2);
+		unlink(bestU2, bestU);
+		unlink(bestV, bestV2);
+		unlink(bestV2, bestV);
+		link(bestU, bestV);
+		link(bestV, bestU);
+		link(bestU2, bestV2);
+		link(bestV2, bestU2);
+		return true;
+	}
+}
@@ -38,6 +38,26 @@ public class Genetic extends AMetaheuristic{
 		this.population = new Population(instance, false, tauxmut, elitisme, taillepop, nbindtournoi);
 	}
 
+	/**
+	 * Initialize the genetic algorithm with a population drawn from a seed, so that the run can be reproduced.
+	 * 
+	 * @param instance the instance used
+	 * @param name 
+	 * @param tauxmut The mutation rate
+	 * @param elitisme If true elitism is applied
+	 * @param nbindtournoi Number of cities in the tournament selection
+	 * @param nbgene Number of generations
+	 * @param taillepop Number of solutions in a population
+	 * @param graine The seed of the random generators
+	 * @throws Exception
+	 */
+	public Genetic(Instance instance, String name, double tauxmut, boolean elitisme, int nbindtournoi, int nbgene, int taillepop, long graine) throws Exception {
+		super(instance, name);
+		this.nbgene=nbgene;
+		
+		this.population = new Population(instance, false, tauxmut, elitisme, taillepop, nbindtournoi, graine);
+	}
+
 	/**
 	 * Initialize the genetic algorithm with a population created with an existing solution.
 	 * 
@@ -58,19 +78,46 @@ public class Genetic extends AMetaheuristic{
 		this.population = new Population(instance, false, tauxmut, elitisme, taillepop, nbindtournoi, solinit);
 	}
 
+	/**
+	 * Initialize the genetic algorithm with a population created with an existing solution and a seed, so that the
+	 * run can be reproduced.
+	 * 
+	 * @param instance the instance used
+	 * @param name 
+	 * @param tauxmut The mutation rate
+	 * @param elitisme If true elitism is applied
+	 * @param nbindtournoi Number of cities in the tournament selection
+	 * @param nbgene Number of generations
+	 * @param taillepop Number of solutions in a population
+	 * @param solinit
+	 * @param graine The seed of the random generators
+	 * @throws Exception
+	 */
+	public Genetic(Instance instance, String name, double tauxmut, boolean elitisme, int nbindtournoi, int nbgene, int taillepop, Solution solinit, long graine) throws Exception {
+		super(instance, name);
+		this.nbgene=nbgene;
+		
+		this.population = new Population(instance, false, tauxmut, elitisme, taillepop, nbindtournoi, solinit, graine);
+	}
+
 // -----------------------------
 // ----- METHODS ---------------
 // -----------------------------
 	
 	/**
-	 * This method realizes the transition to the next generation until the number of generations due
+	 * This method realizes the transition to the next generation until the number of generations due,
+	 * then releases the threads of the population
 	 */
 	@Override
 	public Solution solve(Solution sol) throws Exception {
-		for(int i=0; i<this.getNbgene(); i++) {
-			this.setPopulation(this.getPopulation().EvolvePopulation());
+		try {
+			for(int i=0; i<this.getNbgene(); i++) {
+				this.setPopulation(this.getPopulation().EvolvePopulation());
+			}
+			return this.getPopulation().getMeilleurInd();
+		} finally {
+			this.getPopulation().shutdown();
 		}
-		return this.getPopulation().getMeilleurInd();
 	}
 
 
@@ -94,6 +141,14 @@ public class Genetic extends AMetaheuristic{
 		return nbgene;
 	}
 
+	/**
+	 * Set the number of threads creating the children of each generation
+	 * @param nbThreads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.population.setNbThreads(nbThreads);
+	}
+
 	/**
 	 * Set a population for the instance this.population
 	 * @param population
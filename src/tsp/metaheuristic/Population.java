@@ -1,7 +1,9 @@
 package tsp.metaheuristic;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import tsp.Instance;
 import tsp.Solution;
@@ -10,15 +12,63 @@ import tsp.Solution;
  * @author gauthier.gris
  *
  * This class represents a population with all its features.
+ * 
+ * The tours of the individuals are not stored in Solution objects but one after the other in the array tours:
+ * the tour of individual i is tours[i*(n+1)] to tours[i*(n+1)+n], with the same layout as in a Solution, and its
+ * cost is fitness[i]. The next generation is written in the arrays nextTours and nextFitness, which are then swapped
+ * with the current ones, so the evolution of the population allocates nothing.
+ * 
+ * The cost of an individual is computed when it is created and updated by its mutations, and the index of the best
+ * individual is kept up to date, so the tournaments and the elitism never go through the tours.
+ * 
+ * The children are created by workers, each with its own random generator and work arrays. With several threads
+ * (see {@link #setNbThreads(int)}), each worker creates a slice of the next generation in a thread of a
+ * {@link ForkJoinPool}. For a given seed (given to the constructor or to {@link #setGraine(long)}) and number of
+ * threads, the evolution is always the same.
  */
 public class Population {
+	/** Order crossover, see {@link #croisementOX(Travailleur, int, int, int)} */
+	public static final int CROISEMENT_OX = 0;
+	/** Partially mapped crossover, see {@link #croisementPMX(Travailleur, int, int, int)} */
+	public static final int CROISEMENT_PMX = 1;
+	/** Cycle crossover, see {@link #croisementCX(Travailleur, int, int, int)} */
+	public static final int CROISEMENT_CX = 2;
+	/** Edge assembly crossover, see {@link EdgeAssemblyCrossover} */
+	public static final int CROISEMENT_EAX = 3;
+	
 	private Instance instance;
 	private boolean vide;
 	private double tauxmut;
 	private int taillepop;
-	private ArrayList<Solution> individus;
 	private int nbindtournoi;
 	public boolean elitisme;
+	
+	/** Number of cities of the instance */
+	private int nbcity;
+	/** Length of a tour in the arrays: nbcity+1 */
+	private int longueur;
+	/** Tours of the current generation */
+	private int[] tours;
+	/** Costs of the tours of the current generation */
+	private long[] fitness;
+	/** Tours of the generation being built */
+	private int[] nextTours;
+	/** Costs of the tours of the generation being built */
+	private long[] nextFitness;
+	/** Index of the best individual of the current generation */
+	private int meilleur;
+	/** Index of the best individual of the generation being built */
+	private int nextMeilleur;
+	/** Crossover used to create the children */
+	private int croisement;
+	/** Random generator of the population, which gives a generator to each worker */
+	private SplittableRandom aleatoire;
+	/** Workers creating the children, one for each thread */
+	private Travailleur[] travailleurs;
+	/** Task running all the workers in the pool */
+	private Generation generation;
+	/** Pool of threads running the workers, created on the first parallel generation and released by {@link #shutdown()} */
+	private ForkJoinPool pool;
 
 	
 // -----------------------------
@@ -33,9 +83,23 @@ public class Population {
 	 * @param elitisme If true elitism is applied
 	 * @param taillepop Number of solutions in a population
 	 * @param nbindtournoi Number of cities in the tournament selection
-	 * @throws Exception
 	 */
-	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi) throws Exception {
+	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi) {
+		this(instance, vide, tauxmut, elitisme, taillepop, nbindtournoi, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Initialize a population with random solutions drawn from the seed graine.
+	 * 
+	 * @param instance
+	 * @param vide If true create a population with no solutions
+	 * @param tauxmut Mutation rate
+	 * @param elitisme If true elitism is applied
+	 * @param taillepop Number of solutions in a population
+	 * @param nbindtournoi Number of cities in the tournament selection
+	 * @param graine The seed of the random generators
+	 */
+	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi, long graine) {
 		this.instance=instance;
 		this.vide=vide;
 		this.tauxmut=tauxmut;
@@ -43,16 +107,22 @@ public class Population {
 		this.nbindtournoi=nbindtournoi;
 		this.elitisme=elitisme;
 		
-		this.individus = new ArrayList<Solution>();
+		this.nbcity = instance.getNbCities();
+		this.longueur = this.nbcity + 1;
+		this.tours = new int[taillepop * this.longueur];
+		this.fitness = new long[taillepop];
+		this.nextTours = new int[taillepop * this.longueur];
+		this.nextFitness = new long[taillepop];
+		this.croisement = CROISEMENT_OX;
+		this.aleatoire = new SplittableRandom(graine);
+		this.travailleurs = new Travailleur[] { new Travailleur() };
+		this.generation = new Generation();
 		
-		if(this.isVide()) {
-			for(int i=0; i<this.getNbindtournoi(); i++) {
-				this.individus.add(null);
-			}
-		} else {
+		if(!this.isVide()) {
 			for(int i=0; i<this.getTaillepop(); i++) {
-				individus.add(this.genIndividu());
+				this.genIndividu(i);
 			}
+			this.chercheMeilleur();
 		}
 	}
 	
@@ -66,34 +136,47 @@ public class Population {
 	 * @param taillepop Number of solutions in a population
 	 * @param nbindtournoi Number of cities in the tournament selection
 	 * @param solinit The solution that generates all the population
-	 * @throws Exception
 	 */
-	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi, Solution solinit) throws Exception {
-		this.instance=instance;
+	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi, Solution solinit) {
+		this(instance, vide, tauxmut, elitisme, taillepop, nbindtournoi, solinit, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Initialize a population with solutions derived with swaps of solinit drawn from the seed graine.
+	 * 
+	 * @param instance
+	 * @param vide If true create a population with no solutions
+	 * @param tauxmut Mutation rate
+	 * @param elitisme If true elitism is applied
+	 * @param taillepop Number of solutions in a population
+	 * @param nbindtournoi Number of cities in the tournament selection
+	 * @param solinit The solution that generates all the population
+	 * @param graine The seed of the random generators
+	 */
+	public Population(Instance instance, boolean vide, double tauxmut, boolean elitisme, int taillepop, int nbindtournoi, Solution solinit, long graine) {
+		this(instance, true, tauxmut, elitisme, taillepop, nbindtournoi, graine);
 		this.vide=vide;
-		this.tauxmut=tauxmut;
-		this.taillepop=taillepop;
-		this.nbindtournoi=nbindtournoi;
-		this.elitisme=elitisme;
-		this.individus = new ArrayList<Solution>();
 		
 		int nbswap = 1;
-		int nbcity = this.instance.getNbCities();
-		individus.add(solinit);
+		this.copier(solinit, 0);
 		for(int i=1; i<this.getTaillepop(); i++) {
-			Solution sol = solinit.copy();
+			int debut = i*this.longueur;
+			System.arraycopy(this.tours, 0, this.tours, debut, this.longueur);
 			for(int j=0; j<nbswap; j++) {
-				int index1 = (int)(Math.random()*nbcity);
-				int index2 = (int)(Math.random()*nbcity);
+				int index1 = this.aleatoire.nextInt(this.nbcity);
+				int index2 = this.aleatoire.nextInt(this.nbcity);
 				
-				while(index1==index2 || index1==0 || index1==this.getInstance().getNbCities() || index2==0 || index2==this.getInstance().getNbCities()) {
-					index1 = (int)(Math.random()*nbcity);
-					index2 = (int)(Math.random()*nbcity);
+				while(index1==index2 || index1==0 || index1==this.nbcity || index2==0 || index2==this.nbcity) {
+					index1 = this.aleatoire.nextInt(this.nbcity);
+					index2 = this.aleatoire.nextInt(this.nbcity);
 				}
-				sol.swap(index1, index2);
+				int ville = this.tours[debut+index1];
+				this.tours[debut+index1] = this.tours[debut+index2];
+				this.tours[debut+index2] = ville;
 			}
-			individus.add(sol);
+			this.fitness[i] = this.cout(this.tours, debut);
 		}
+		this.chercheMeilleur();
 	}
 	
 // -----------------------------
@@ -103,46 +186,84 @@ public class Population {
 	
 	
 	/**
-	 * Create a random solution.
+	 * Create a random solution at the index index of the population. The best
+	 * individual is not updated, as the population may not be complete yet.
 	 * 
-	 * @return A new solution to fill the population
-	 * @throws Exception
+	 * @param index The index of the new solution
 	 */
-	public Solution genIndividu() throws Exception {
-		ArrayList<Integer> liste = new ArrayList<Integer>();
-		for(int i=1; i<this.getInstance().getNbCities(); i++) {
-			liste.add(i);
+	public void genIndividu(int index) {
+		int debut = index*this.longueur;
+		this.tours[debut] = 0;
+		this.tours[debut+this.nbcity] = 0;
+		for(int i=1; i<this.nbcity; i++) {
+			this.tours[debut+i] = i;
 		}
-		Collections.shuffle(liste);
-		
-		Solution individu = new Solution(this.getInstance());
-		
-		for(int i=0; i<this.getInstance().getNbCities()-1; i++) {
-			individu.setCityPosition(liste.get(i), i+1);
+		// Fisher-Yates shuffle of the cities 1 to nbcity-1
+		for(int i=this.nbcity-1; i>1; i--) {
+			int j = 1 + this.aleatoire.nextInt(i);
+			int ville = this.tours[debut+i];
+			this.tours[debut+i] = this.tours[debut+j];
+			this.tours[debut+j] = ville;
 		}
-		return individu;
+		this.fitness[index] = this.cout(this.tours, debut);
 	}
 	
+	/**
+	 * Looks for the best individual of the whole population.
+	 */
+	private void chercheMeilleur() {
+		this.meilleur = 0;
+		for(int i=1; i<this.getTaillepop(); i++) {
+			if(this.fitness[i]<this.fitness[this.meilleur]) {
+				this.meilleur = i;
+			}
+		}
+	}
 	
+	/**
+	 * Updates the index of the best individual after a change of the individual at the index index,
+	 * in a complete population.
+	 * 
+	 * @param index The index of the changed individual
+	 */
+	private void majMeilleur(int index) {
+		if(this.fitness[index]<this.fitness[this.meilleur]) {
+			this.meilleur = index;
+		} else if(index==this.meilleur) {
+			// The best individual may have become worse than another one
+			this.chercheMeilleur();
+		}
+	}
 	
 	/**
-	 * This method calculates all solutions' objectiveValue and return the solution with the best one.
+	 * Computes the cost of a tour of an array of the population.
 	 * 
-	 * @return The best solution of a population
-	 * @throws Exception
+	 * @param villes tours or nextTours
+	 * @param debut The index of the first city of the tour in villes
+	 * @return The cost of the tour
 	 */
-	public Solution getMeilleurInd() throws Exception {
-		
-		double min = this.getIndividus().get(0).evaluate();
-		int indice = 0;
-		
-		for(int i=1; i<this.getIndividus().size(); i++) {
-			if(this.getIndividus().get(i).evaluate()<min) {
-				indice = i;
-				min = this.getIndividus().get(i).getObjectiveValue();
-			}
-		} 
-		return this.getIndividus().get(indice);
+	private long cout(int[] villes, int debut) {
+		long cout = 0;
+		for(int i=debut; i<debut+this.nbcity; i++) {
+			cout += this.instance.distance(villes[i], villes[i+1]);
+		}
+		return cout;
+	}
+	
+	
+	
+	/**
+	 * @return The index of the solution with the best objectiveValue, kept up to date when the population changes
+	 */
+	public int getIndiceMeilleurInd() {
+		return this.meilleur;
+	}
+	
+	/**
+	 * @return A copy of the best solution of a population
+	 */
+	public Solution getMeilleurInd() {
+		return this.getIndividu(this.getIndiceMeilleurInd());
 	}
 	
 	//Retourne le meilleur individu du tournoi
@@ -151,16 +272,18 @@ public class Population {
 	 * Create a tournament:
 	 * nbindtournoi are selected randomly in the population and the one with the best objectiveValue is the "winner" of the tournament.
 	 * 
-	 * @return the winner of the tournament
-	 * @throws Exception
+	 * @param t The worker drawing the solutions
+	 * @return the index of the winner of the tournament
 	 */
-	public Solution Tournoi() throws Exception {
-		Population tournoi = new Population(this.getInstance(), true, this.getTauxmut(), this.isElitisme(), this.getNbindtournoi(), this.getNbindtournoi());
-		for(int i=0; i<this.getNbindtournoi(); i++) {
-			int rand = (int)(Math.random()*this.getTaillepop());
-			tournoi.setIndividu(this.getIndividus().get(rand), i);
+	private int Tournoi(Travailleur t) {
+		int gagnant = t.aleatoire.nextInt(this.getTaillepop());
+		for(int i=1; i<this.getNbindtournoi(); i++) {
+			int rand = t.aleatoire.nextInt(this.getTaillepop());
+			if(this.fitness[rand]<this.fitness[gagnant]) {
+				gagnant = rand;
+			}
 		}
-		return tournoi.getMeilleurInd();
+		return gagnant;
 	}
 
 	
@@ -169,110 +292,304 @@ public class Population {
 	 * If this number is inferior to the mutation rate, a mutation is applied to the solution.
 	 * The mutation is a swap of two cities in the solution.
 	 * 
-	 * @param individu the solution which possibly receives a mutation
-	 * @return
-	 * @throws Exception
+	 * The cost of the solution is updated with the edges changed by each swap. A swap changes up to 8 edges, so
+	 * beyond nbcity/8 swaps the cost is recomputed once at the end instead.
+	 * 
+	 * @param t The worker drawing the mutations
+	 * @param index the index in the next generation of the solution which possibly receives a mutation
 	 */
-	public Solution Muter(Solution individu) throws Exception {
-		for(int pos1=1; pos1<individu.getM_nbCities(); pos1++) {
-			if(Math.random()<this.getTauxmut()) {
-				int pos2 = (int)Math.random()*individu.getM_nbCities();
-				if(pos2==0) {
-					pos2++;
+	private void Muter(Travailleur t, int index) {
+		int debut = index*this.longueur;
+		long cout = this.nextFitness[index];
+		int nbswap = 0;
+		for(int pos1=1; pos1<this.nbcity; pos1++) {
+			if(t.aleatoire.nextDouble()<this.getTauxmut()) {
+				int pos2 = 1 + t.aleatoire.nextInt(this.nbcity - 1);
+				if(nbswap++ < this.nbcity/8) {
+					cout += this.deltaEchange(this.nextTours, debut, pos1, pos2);
 				}
-				individu.swap(pos1, pos2);
+				int ville = this.nextTours[debut+pos1];
+				this.nextTours[debut+pos1] = this.nextTours[debut+pos2];
+				this.nextTours[debut+pos2] = ville;
 			}
 		}
-		return individu;
+		this.nextFitness[index] = nbswap > this.nbcity/8 ? this.cout(this.nextTours, debut) : cout;
+	}
+	
+	/**
+	 * Cost change of the exchange of the cities at positions index1 and index2 of a tour, as
+	 * {@link Solution#deltaSwap(int, int)}.
+	 * 
+	 * @param villes tours or nextTours
+	 * @param debut The index of the first city of the tour in villes
+	 * @param index1 the position of the first city, between 1 and nbcity-1
+	 * @param index2 the position of the second city, between 1 and nbcity-1
+	 * @return the change of the cost of the tour
+	 */
+	private long deltaEchange(int[] villes, int debut, int index1, int index2) {
+		if(index1==index2) {
+			return 0;
+		}
+		int p = debut + Math.min(index1, index2);
+		int q = debut + Math.max(index1, index2);
+		int a = villes[p];
+		int b = villes[q];
+		int avant = villes[p-1];
+		int apres = villes[q+1];
+		if(q==p+1) {
+			return this.instance.distance(avant, b) + this.instance.distance(a, apres)
+					- this.instance.distance(avant, a) - this.instance.distance(b, apres);
+		}
+		int suivantA = villes[p+1];
+		int precedentB = villes[q-1];
+		return this.instance.distance(avant, b) + this.instance.distance(b, suivantA)
+				+ this.instance.distance(precedentB, a) + this.instance.distance(a, apres)
+				- this.instance.distance(avant, a) - this.instance.distance(a, suivantA)
+				- this.instance.distance(precedentB, b) - this.instance.distance(b, apres);
 	}
 
 	
 	
 	/**
-	 * Two integers "debut" and "fin" are randomly chosen between 1 and taillepop-1.
-	 * A child solution is created through the order of cities in the parent's solutions.
-	 * 
+	 * Creates the child at the index enfant of the next generation from two parents, with the crossover chosen by
+	 * {@link #setCroisement(int)}, and computes its cost.
 	 * 
+	 * @param t The worker creating the child
+	 * @param parent1 The index of the first solution chosen
+	 * @param parent2 The index of the second solution chosen
+	 * @param enfant The index of the child solution in the next generation
+	 */
+	private void Crossover(Travailleur t, int parent1, int parent2, int enfant) {
+		if(++t.tampon==Integer.MAX_VALUE) {
+			Arrays.fill(t.marque, 0);
+			t.tampon = 1;
+		}
+		int p1 = parent1*this.longueur;
+		int p2 = parent2*this.longueur;
+		int child = enfant*this.longueur;
+		this.nextTours[child] = 0;
+		this.nextTours[child+this.nbcity] = 0;
+		switch(this.croisement) {
+		case CROISEMENT_PMX:
+			this.nextFitness[enfant] = this.croisementPMX(t, p1, p2, child);
+			break;
+		case CROISEMENT_CX:
+			this.nextFitness[enfant] = this.croisementCX(t, p1, p2, child);
+			break;
+		case CROISEMENT_EAX:
+			this.nextFitness[enfant] = t.eax.cross(this.tours, p1, p2, this.nextTours, child, t.aleatoire);
+			break;
+		default:
+			this.nextFitness[enfant] = this.croisementOX(t, p1, p2, child);
+		}
+	}
+	
+	/**
+	 * Order crossover: two integers "debut" and "fin" are randomly chosen between 1 and nbcity-1.
+	 * The child gets the cities of parent1 from debut to fin (going through the end of the tour if fin < debut) at
+	 * the same positions, and the other positions are filled from left to right with the other cities in the order
+	 * of parent2.
 	 * 
-	 * @param parent1 The first solution chosen
-	 * @param parent2 The second solution chosen
-	 * @return the child solution created with the two parents
-	 * @throws Exception
+	 * @param t The worker creating the child
+	 * @param p1 The index of the first city of parent1 in tours
+	 * @param p2 The index of the first city of parent2 in tours
+	 * @param child The index of the first city of the child in nextTours
+	 * @return the cost of the child
 	 */
-	public Solution Crossover(Solution parent1, Solution parent2) throws Exception {
-		
-		Solution child = new Solution(this.getInstance());
-		int debut = (int)(Math.random()*parent1.getM_nbCities());
-		int fin = (int)(Math.random()*parent1.getM_nbCities());
+	private long croisementOX(Travailleur t, int p1, int p2, int child) {
+		int debut = this.pointDeCoupe(t);
+		int fin = this.pointDeCoupe(t);
+		while(debut==fin) {
+			fin = this.pointDeCoupe(t);
+		}
 		
-		while(debut==fin || debut==0 || debut==this.getInstance().getNbCities() || fin==0 || fin==this.getInstance().getNbCities()) {
-			debut = (int)(Math.random()*parent1.getM_nbCities());
-			fin = (int)(Math.random()*parent1.getM_nbCities());
+		for(int i=1; i<this.nbcity; i++) {
+			if(dansSegment(i, debut, fin)) {
+				t.marque[this.tours[p1+i]] = t.tampon;
+			}
 		}
 		
-		for(int i=1; i<parent1.getM_nbCities(); i++) {
-			if(debut<fin && (i>=debut && i<=fin)) {
-				child.setCityPosition(parent1.getCity(i), i);
-			} else if (fin < debut) {
-				if(i<=fin || i>=debut) {
-					child.setCityPosition(parent1.getCity(i), i);
+		long cout = 0;
+		int precedente = 0;
+		int suivante = p2+1;
+		for(int i=1; i<this.nbcity; i++) {
+			int ville;
+			if(dansSegment(i, debut, fin)) {
+				ville = this.tours[p1+i];
+			} else {
+				while(t.marque[this.tours[suivante]]==t.tampon) {
+					suivante++;
 				}
-			}	
+				ville = this.tours[suivante++];
+			}
+			this.nextTours[child+i] = ville;
+			cout += this.instance.distance(precedente, ville);
+			precedente = ville;
 		}
+		return cout + this.instance.distance(precedente, 0);
+	}
 	
-	
-		for(int i=1; i<parent2.getM_nbCities(); i++) {
-			if(!child.contient(parent2.getCity(i))) {
-				int j=1;
-				boolean place = child.getCity(j)==0;
-				if(place) {
-					child.setCityPosition(parent2.getCity(i), 1);
-				}
-				while(!place && j<child.getM_nbCities()-1) {
-					j++;
-					if (child.getCity(j)==0) {
-						place = true;
-						child.setCityPosition(parent2.getCity(i), j);
-					}
+	/**
+	 * Partially mapped crossover: the child gets the cities of parent1 between two random positions debut and fin,
+	 * as in {@link #croisementOX(Travailleur, int, int, int)}, and the cities of parent2 at the other positions. A city of parent2
+	 * already copied from parent1 is replaced by the city of parent2 at its position in parent1, until the city is
+	 * not in the copied segment.
+	 * 
+	 * @param t The worker creating the child
+	 * @param p1 The index of the first city of parent1 in tours
+	 * @param p2 The index of the first city of parent2 in tours
+	 * @param child The index of the first city of the child in nextTours
+	 * @return the cost of the child
+	 */
+	private long croisementPMX(Travailleur t, int p1, int p2, int child) {
+		int debut = this.pointDeCoupe(t);
+		int fin = this.pointDeCoupe(t);
+		while(debut==fin) {
+			fin = this.pointDeCoupe(t);
+		}
+		
+		for(int i=1; i<this.nbcity; i++) {
+			int ville = this.tours[p1+i];
+			t.positions[ville] = i;
+			if(dansSegment(i, debut, fin)) {
+				t.marque[ville] = t.tampon;
+			}
+		}
+		
+		long cout = 0;
+		int precedente = 0;
+		for(int i=1; i<this.nbcity; i++) {
+			int ville;
+			if(dansSegment(i, debut, fin)) {
+				ville = this.tours[p1+i];
+			} else {
+				ville = this.tours[p2+i];
+				while(t.marque[ville]==t.tampon) {
+					ville = this.tours[p2+t.positions[ville]];
 				}
 			}
+			this.nextTours[child+i] = ville;
+			cout += this.instance.distance(precedente, ville);
+			precedente = ville;
+		}
+		return cout + this.instance.distance(precedente, 0);
+	}
+	
+	/**
+	 * Cycle crossover: the positions are split into cycles, going from position i to the position in parent1 of the
+	 * city of parent2 at position i. The child gets the cities of parent1 on the first cycle, of parent2 on the
+	 * second one, and so on, so each city keeps the position it has in one of the parents.
+	 * 
+	 * @param t The worker creating the child
+	 * @param p1 The index of the first city of parent1 in tours
+	 * @param p2 The index of the first city of parent2 in tours
+	 * @param child The index of the first city of the child in nextTours
+	 * @return the cost of the child
+	 */
+	private long croisementCX(Travailleur t, int p1, int p2, int child) {
+		for(int i=1; i<this.nbcity; i++) {
+			t.positions[this.tours[p1+i]] = i;
+		}
+		
+		// The position i is in a cycle already copied if the city of parent1 at i is marked
+		boolean depuisParent1 = true;
+		for(int debut=1; debut<this.nbcity; debut++) {
+			if(t.marque[this.tours[p1+debut]]==t.tampon) {
+				continue;
+			}
+			int source = depuisParent1 ? p1 : p2;
+			int i = debut;
+			do {
+				t.marque[this.tours[p1+i]] = t.tampon;
+				this.nextTours[child+i] = this.tours[source+i];
+				i = t.positions[this.tours[p2+i]];
+			} while(i!=debut);
+			depuisParent1 = !depuisParent1;
 		}
-		return child;
+		return this.cout(this.nextTours, child);
+	}
+	
+	/**
+	 * @param t The worker drawing the position
+	 * @return a random position between 1 and nbcity-1
+	 */
+	private int pointDeCoupe(Travailleur t) {
+		return 1 + t.aleatoire.nextInt(this.nbcity-1);
+	}
+	
+	/**
+	 * @return true if the position i is in the segment from debut to fin, going through the end of the tour if fin < debut
+	 */
+	private static boolean dansSegment(int i, int debut, int fin) {
+		return debut<fin ? (i>=debut && i<=fin) : (i<=fin || i>=debut);
 	}
 
 	
 	/**
 	 * This method makes the generation evolve to the next generation
 	 * 
-	 * For each member of the new population :
+	 * For each member of the new population, in the slice of a worker :
 	 * 		After two tournaments, two solution are selected to be the parents.
 	 * 		A solution child is created from the crossover of these two parents.
 	 * 		The child is subject to a mutation
 	 * 		This solution is finally added in the new population
 	 * 
-	 * If elitism is applied, the best solution is kept from a generation to another
-	 * @return
-	 * @throws Exception
+	 * If elitism is applied, the best solution is kept from a generation to another.
+	 * 
+	 * The new generation is written in nextTours, which then becomes the current one.
+	 * @return this population, at the next generation
 	 */
-	public Population EvolvePopulation() throws Exception {
-		Population newPop = new Population(this.getInstance(), this.isVide(), this.getTauxmut(), this.isElitisme(), this.getTaillepop(), this.getNbindtournoi());
+	public Population EvolvePopulation() {
 		int eli=0;
+		this.nextMeilleur = 0;
 		if(elitisme) {
-			newPop.setIndividu(this.getMeilleurInd(), 0);
+			System.arraycopy(this.tours, this.meilleur*this.longueur, this.nextTours, 0, this.longueur);
+			this.nextFitness[0] = this.fitness[this.meilleur];
 			eli =1;
 		}
-		for(int i=eli; i<newPop.getTaillepop(); i++) {
-			Solution parent1 = this.Tournoi();
-			Solution parent2 = this.Tournoi();
-			Solution child = this.Crossover(parent1, parent2);
-			if(Math.random()<0.01) {
+		int nbenfants = this.getTaillepop()-eli;
+		int nbthreads = this.travailleurs.length;
+		for(int k=0; k<nbthreads; k++) {
+			this.travailleurs[k].debut = eli + (int)((long)k*nbenfants/nbthreads);
+			this.travailleurs[k].fin = eli + (int)((long)(k+1)*nbenfants/nbthreads);
+		}
+		if(nbthreads==1) {
+			this.travailleurs[0].creer();
+		} else {
+			if(this.pool==null) {
+				this.pool = new ForkJoinPool(nbthreads);
 			}
-			newPop.setIndividu(child, i);
+			for(Travailleur t : this.travailleurs) {
+				t.reinitialize();
+			}
+			this.generation.reinitialize();
+			this.pool.invoke(this.generation);
 		}
-		for(int i=eli; i<newPop.getTaillepop(); i++) {
-			newPop.setIndividu(this.Muter(newPop.getIndividus().get(i)), i);
+		for(Travailleur t : this.travailleurs) {
+			if(t.debut<t.fin && this.nextFitness[t.meilleur]<this.nextFitness[this.nextMeilleur]) {
+				this.nextMeilleur = t.meilleur;
+			}
+		}
+		
+		int[] villes = this.tours;
+		this.tours = this.nextTours;
+		this.nextTours = villes;
+		long[] couts = this.fitness;
+		this.fitness = this.nextFitness;
+		this.nextFitness = couts;
+		this.meilleur = this.nextMeilleur;
+		return this;
+	}
+	
+	/**
+	 * Releases the threads of the pool running the workers. It must be called once the population no longer evolves
+	 * with several threads; a later parallel generation creates a new pool.
+	 */
+	public void shutdown() {
+		if(this.pool!=null) {
+			this.pool.shutdown();
+			this.pool = null;
 		}
-		return newPop;
 	}
 
 
@@ -322,10 +639,25 @@ public class Population {
 
 	/**
 	 * 
-	 * @return An ArrayList containing all the solutions of the population
+	 * @param index The index of a solution in the population
+	 * @return A copy of the solution at the index index
+	 */
+	public Solution getIndividu(int index) {
+		Solution individu = new Solution(this.getInstance());
+		int debut = index*this.longueur;
+		for(int i=0; i<=this.nbcity; i++) {
+			individu.setCityAt(this.tours[debut+i], i);
+		}
+		return individu;
+	}
+	
+	/**
+	 * 
+	 * @param index The index of a solution in the population
+	 * @return The cost of the solution at the index index
 	 */
-	public ArrayList<Solution> getIndividus() {
-		return individus;
+	public long getFitness(int index) {
+		return this.fitness[index];
 	}
 
 	/**
@@ -337,12 +669,164 @@ public class Population {
 	}
 	
 	/**
-	 * Set the solution sol at the index index in the population
+	 * 
+	 * @return The crossover used to create the children
+	 */
+	public int getCroisement() {
+		return croisement;
+	}
+
+	/**
+	 * Choose the crossover used to create the children
+	 * 
+	 * @param croisement {@link #CROISEMENT_OX}, {@link #CROISEMENT_PMX}, {@link #CROISEMENT_CX} or {@link #CROISEMENT_EAX}
+	 */
+	public void setCroisement(int croisement) {
+		if(croisement<CROISEMENT_OX || croisement>CROISEMENT_EAX) {
+			throw new IllegalArgumentException("Unknown crossover " + croisement);
+		}
+		this.croisement = croisement;
+		for(Travailleur t : this.travailleurs) {
+			if(croisement==CROISEMENT_EAX && t.eax==null) {
+				t.eax = new EdgeAssemblyCrossover(this.instance);
+			}
+		}
+	}
+	
+	/**
+	 * Copy the solution sol at the index index in a complete population
 	 * 
 	 * @param sol The solution to be placed in the population
 	 * @param index The index to place the solution
 	 */
 	public void setIndividu(Solution sol, int index) {
-		this.getIndividus().set(index, sol);
+		this.copier(sol, index);
+		this.majMeilleur(index);
+	}
+	
+	/**
+	 * Copy the solution sol at the index index, without updating the best individual.
+	 * 
+	 * @param sol The solution to be copied
+	 * @param index The index to place the solution
+	 */
+	private void copier(Solution sol, int index) {
+		int debut = index*this.longueur;
+		for(int i=0; i<=this.nbcity; i++) {
+			this.tours[debut+i] = sol.cityAt(i);
+		}
+		this.fitness[index] = sol.getObjectiveValue();
+	}
+	
+	/**
+	 * 
+	 * @return The number of threads creating the children
+	 */
+	public int getNbThreads() {
+		return travailleurs.length;
+	}
+	
+	/**
+	 * Set the number of threads creating the children, each with its own worker
+	 * 
+	 * @param nbThreads The number of threads, 1 to create the children in the calling thread
+	 */
+	public void setNbThreads(int nbThreads) {
+		nbThreads = Math.max(1, nbThreads);
+		if(nbThreads==this.travailleurs.length) {
+			return;
+		}
+		this.shutdown();
+		Travailleur[] anciens = this.travailleurs;
+		this.travailleurs = Arrays.copyOf(anciens, nbThreads);
+		for(int k=anciens.length; k<nbThreads; k++) {
+			this.travailleurs[k] = new Travailleur();
+		}
+	}
+	
+	/**
+	 * Set the seed of the random generators of the next generations (the current individuals were drawn with the
+	 * seed given to the constructor)
+	 * 
+	 * @param graine The seed
+	 */
+	public void setGraine(long graine) {
+		this.aleatoire = new SplittableRandom(graine);
+		for(Travailleur t : this.travailleurs) {
+			t.aleatoire = this.aleatoire.split();
+		}
+	}
+	
+	
+// -----------------------------
+// ----- WORKERS ---------------
+// -----------------------------
+	
+	/**
+	 * Creates the children from the index debut to fin-1 of the next generation, with its own random generator and
+	 * work arrays, so the workers can run at the same time: they only read the current generation and write disjoint
+	 * slices of the next one.
+	 */
+	private class Travailleur extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		/** Random generator of the worker */
+		private SplittableRandom aleatoire;
+		/** marque[c] is equal to tampon if city c is already in the child being built by a crossover */
+		private int[] marque;
+		/** Value of marque for the current crossover, changed for each child so marque is never cleared */
+		private int tampon;
+		/** positions[c] is the position of city c in the first parent of a crossover */
+		private int[] positions;
+		/** Work arrays of the edge assembly crossover, created when it is chosen */
+		private EdgeAssemblyCrossover eax;
+		/** Index of the first child of the worker */
+		private int debut;
+		/** Index following the last child of the worker */
+		private int fin;
+		/** Index of the best child of the worker */
+		private int meilleur;
+		
+		private Travailleur() {
+			this.aleatoire = Population.this.aleatoire.split();
+			this.marque = new int[nbcity];
+			this.positions = new int[nbcity];
+			if(croisement==CROISEMENT_EAX) {
+				this.eax = new EdgeAssemblyCrossover(instance);
+			}
+		}
+		
+		@Override
+		protected void compute() {
+			this.creer();
+		}
+		
+		/**
+		 * For each index of the slice, two parents are selected by tournaments, crossed and the child is mutated.
+		 */
+		private void creer() {
+			this.meilleur = this.debut;
+			for(int i=this.debut; i<this.fin; i++) {
+				int parent1 = Tournoi(this);
+				int parent2 = Tournoi(this);
+				Crossover(this, parent1, parent2, i);
+				Muter(this, i);
+				if(nextFitness[i]<nextFitness[this.meilleur]) {
+					this.meilleur = i;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs all the workers in the pool.
+	 */
+	private class Generation extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected void compute() {
+			invokeAll(travailleurs);
+		}
 	}
 }
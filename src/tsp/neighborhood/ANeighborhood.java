@@ -1,12 +1,29 @@
 package tsp.neighborhood;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import tsp.Instance;
 import tsp.Solution;
 
 /**
  * This is the abstract class for Neighborhood
+ * 
+ * A neighborhood streams its moves to a {@link MoveVisitor} with
+ * {@link #forEachMove(Solution, MoveVisitor)}, together with the variation of
+ * the objective value, without copying the solution. The move chosen by the
+ * caller is then applied with {@link #apply(Solution, long)}.
+ * {@link #getNeighborhood(Solution)} builds the list of the neighbors from
+ * these two methods, each neighbor costs a copy of the solution.
+ * 
+ * The moves are grouped by a first position (the outer index of the scan),
+ * so {@link #bestMove(Solution)} can split the positions between
+ * #m_nbThreads threads of a {@link ForkJoinPool}. Ties between moves with the
+ * same delta are broken by the smallest move, so the best move does not
+ * depend on the number of threads.
+ * 
  * @author Axel Grimault
  * @version 2017
  *
@@ -23,6 +40,19 @@ abstract public class ANeighborhood {
 	/** The name of the neighborhood */
 	protected String m_name;
 
+	/** Number of threads of {@link #bestMove(Solution)}, 1 to scan in the calling thread */
+	private int m_nbThreads = 1;
+
+	/**
+	 * Pool of #m_nbThreads threads, created on the first parallel scan (the
+	 * common pool when it has #m_nbThreads threads) and released by
+	 * {@link #shutdown()}
+	 */
+	private ForkJoinPool m_pool;
+
+	/** Variation of the objective value of the last move returned by {@link #bestMove(Solution)} */
+	private long m_bestDelta;
+
 	
 	// -----------------------------
 	// ----- CONSTRUCTOR -----------
@@ -33,7 +63,7 @@ abstract public class ANeighborhood {
 	 * @param instance the instance of the problem
 	 * @param name the name of the neighborhood
 	 */
-	public ANeighborhood(Instance instance, String name) throws Exception {
+	public ANeighborhood(Instance instance, String name) {
 		m_instance = instance;
 		m_name = name;
 	}
@@ -43,8 +73,125 @@ abstract public class ANeighborhood {
 	// ----- METHODS ---------------
 	// -----------------------------
 
-	/** Apply the neighborhood to get a neighbor */
-	public abstract List<Solution> getNeighborhood(Solution sol) throws Exception ;
+	/**
+	 * Calls visitor on the moves of the neighborhood of sol, until it returns
+	 * false. sol must not be modified during the scan.
+	 * 
+	 * @param sol a feasible solution
+	 * @param visitor receives each move and its variation of the objective value
+	 * @return false if the scan has been stopped by visitor
+	 */
+	public boolean forEachMove(Solution sol, MoveVisitor visitor) {
+		initialize(sol);
+		return forEachMove(sol, 0, m_instance.getNbCities(), visitor);
+	}
+
+	/**
+	 * Calls visitor on the moves whose first position is in [from, to[, until
+	 * it returns false. It may be called by several threads at the same time
+	 * on the same solution, after {@link #initialize(Solution)}.
+	 * 
+	 * @param sol a feasible solution, it is not modified
+	 * @param from the first position
+	 * @param to the position following the last one
+	 * @param visitor receives each move and its variation of the objective value
+	 * @return false if the scan has been stopped by visitor
+	 */
+	protected abstract boolean forEachMove(Solution sol, int from, int to, MoveVisitor visitor);
+
+	/**
+	 * Loads what the scans of sol need (candidate lists...), before
+	 * {@link #forEachMove(Solution, int, int, MoveVisitor)} is called.
+	 * 
+	 * @param sol the scanned solution
+	 */
+	protected void initialize(Solution sol) {
+	}
+
+	/**
+	 * Looks for the move of the neighborhood of sol with the smallest
+	 * variation of the objective value (it may not improve sol), with
+	 * #m_nbThreads threads. Its variation is given by {@link #getBestDelta()}.
+	 * 
+	 * @param sol a feasible solution, it is not modified
+	 * @return the best move, -1 if the neighborhood is empty
+	 */
+	public long bestMove(Solution sol) {
+		initialize(sol);
+		int n = m_instance.getNbCities();
+		BestMoveTask task;
+		if (m_nbThreads > 1) {
+			// Several tasks by thread, the first positions often have more moves
+			task = new BestMoveTask(sol, 0, n, Math.max(1, n / (8 * m_nbThreads)));
+			if (m_pool == null) {
+				m_pool = m_nbThreads == ForkJoinPool.getCommonPoolParallelism()
+						? ForkJoinPool.commonPool() : new ForkJoinPool(m_nbThreads);
+			}
+			m_pool.invoke(task);
+		} else {
+			task = new BestMoveTask(sol, 0, n, n);
+			task.compute();
+		}
+		m_bestDelta = task.m_best.m_delta;
+		return task.m_best.m_move;
+	}
+
+	/**
+	 * Releases the threads of the pool used by {@link #bestMove(Solution)}. It
+	 * must be called once the neighborhood is no longer used with several
+	 * threads; a later parallel scan creates a new pool.
+	 */
+	public void shutdown() {
+		if (m_pool != null) {
+			// The common pool ignores the shutdown
+			m_pool.shutdown();
+			m_pool = null;
+		}
+	}
+
+	/**
+	 * Best improvement local search: applies the best move of the neighborhood
+	 * (see {@link #bestMove(Solution)}) while it improves the solution.
+	 * 
+	 * @param sol a feasible solution, it is not modified
+	 * @return a new solution, local optimum for the neighborhood
+	 */
+	public Solution bestImprovement(Solution sol) {
+		Solution result = sol.copy();
+		long move = bestMove(result);
+		while (move >= 0 && m_bestDelta < 0) {
+			apply(result, move);
+			move = bestMove(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Applies a move given by {@link #forEachMove(Solution, MoveVisitor)} and
+	 * updates the objective value of sol.
+	 * 
+	 * @param sol the solution the move has been found on
+	 * @param move the move
+	 */
+	public abstract void apply(Solution sol, long move);
+
+	/**
+	 * Apply the neighborhood to get the neighbors: a copy of sol for each move
+	 * of {@link #forEachMove(Solution, MoveVisitor)}, with its objective value.
+	 * 
+	 * @param sol a feasible solution, it is not modified
+	 * @return the neighbors of sol
+	 */
+	public List<Solution> getNeighborhood(Solution sol) {
+		List<Solution> neighbors = new ArrayList<Solution>();
+		forEachMove(sol, (move, delta) -> {
+			Solution neighbor = sol.copy();
+			apply(neighbor, move);
+			neighbors.add(neighbor);
+			return true;
+		});
+		return neighbors;
+	}
 
 
 	// -----------------------------
@@ -57,4 +204,95 @@ abstract public class ANeighborhood {
 		return m_name;
 	}
 
+	/** @return the number of threads of {@link #bestMove(Solution)} */
+	public int getNbThreads() {
+		return m_nbThreads;
+	}
+
+	/**
+	 * @param nbThreads the number of threads of {@link #bestMove(Solution)}, 1 to scan in the calling thread
+	 */
+	public void setNbThreads(int nbThreads) {
+		if (nbThreads != m_nbThreads) {
+			shutdown();
+		}
+		m_nbThreads = Math.max(1, nbThreads);
+	}
+
+	/** @return the variation of the objective value of the last move returned by {@link #bestMove(Solution)} */
+	public long getBestDelta() {
+		return m_bestDelta;
+	}
+
+
+	/**
+	 * Keeps the move with the smallest delta, and the smallest move among the
+	 * moves with the same delta.
+	 */
+	private static class BestMove implements MoveVisitor {
+
+		/** The best move, -1 if no move has been visited */
+		private long m_move = -1;
+
+		/** Variation of the objective value of #m_move */
+		private long m_delta = Long.MAX_VALUE;
+
+		@Override
+		public boolean visit(long move, long delta) {
+			if (delta < m_delta || (delta == m_delta && move < m_move)) {
+				m_move = move;
+				m_delta = delta;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Fork-join task that looks for the best move whose first position is in
+	 * [#m_from, #m_to[. The positions are split in two until there are at
+	 * most #m_grain of them, the best moves of the two halves are then
+	 * compared.
+	 */
+	private class BestMoveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The scanned solution */
+		private final Solution m_solution;
+
+		/** First position of the task */
+		private final int m_from;
+
+		/** Position following the last position of the task */
+		private final int m_to;
+
+		/** Greatest number of positions scanned by a task without splitting it */
+		private final int m_grain;
+
+		/** Best move of the task */
+		private BestMove m_best;
+
+		private BestMoveTask(Solution solution, int from, int to, int grain) {
+			m_solution = solution;
+			m_from = from;
+			m_to = to;
+			m_grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (m_to - m_from <= m_grain) {
+				m_best = new BestMove();
+				forEachMove(m_solution, m_from, m_to, m_best);
+				return;
+			}
+			int middle = (m_from + m_to) >>> 1;
+			BestMoveTask left = new BestMoveTask(m_solution, m_from, middle, m_grain);
+			BestMoveTask right = new BestMoveTask(m_solution, middle, m_to, m_grain);
+			invokeAll(left, right);
+			m_best = left.m_best;
+			m_best.visit(right.m_best.m_move, right.m_best.m_delta);
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package tsp.neighborhood;
+
+/**
+ * Receives the moves streamed by
+ * {@link ANeighborhood#forEachMove(tsp.Solution, MoveVisitor)}. A move is a
+ * long whose meaning is given by the neighborhood, so that scanning a
+ * neighborhood allocates nothing: a visitor keeps the moves it is interested
+ * in and gives them back to {@link ANeighborhood#apply(tsp.Solution, long)}.
+ */
+public interface MoveVisitor {
+
+	/**
+	 * @param move a move of the neighborhood
+	 * @param delta variation of the objective value if the move is applied
+	 * @return true to go on with the next moves, false to stop the scan
+	 */
+	boolean visit(long move, long delta);
+}
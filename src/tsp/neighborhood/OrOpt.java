@@ -0,0 +1,187 @@
+package tsp.neighborhood;
+
+import tsp.Instance;
+import tsp.Solution;
+
+/**
+ * Or-opt neighborhood: a segment of 1 to #MAX_SEGMENT_LENGTH consecutive
+ * cities is removed from the tour and inserted elsewhere, possibly reversed.
+ *
+ * Only the insertions next to a candidate neighbor (see
+ * {@link Instance#getNeighbors(int)}) of one of the ends of the segment are
+ * looked at: the segment is put just before or just after that neighbor. The
+ * cost of a move is computed in O(1) from the three removed and three added
+ * edges (see {@link Solution#deltaOrOpt(int, int, int, boolean)}).
+ *
+ * The streamed moves are the insertions whose edge to the candidate is
+ * shorter than the gain of removing the segment, the only ones that can
+ * improve the tour. A move packs the positions i, k and p of
+ * {@link Solution#applyOrOpt(int, int, int, boolean)} and the reversal.
+ */
+public class OrOpt extends ANeighborhood {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Maximum number of cities of a moved segment */
+	public static final int MAX_SEGMENT_LENGTH = 3;
+
+	/** Number of candidates of each city */
+	private int m_nbNeighbors;
+
+	/** Candidate lists of the instance */
+	private int[] m_neighbors;
+
+	/** Stops the scan on the first improving move, which is kept in #m_improvingMove */
+	private MoveVisitor m_firstImprovement;
+
+	/** Last improving move found by #m_firstImprovement */
+	private long m_improvingMove;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Creates the neighborhood with the default candidate lists.
+	 * @param instance the instance of the problem
+	 * @param name the name of the neighborhood
+	 */
+	public OrOpt(Instance instance, String name) {
+		this(instance, name, Instance.NB_NEIGHBORS);
+	}
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the neighborhood
+	 * @param nbNeighbors number of candidates of each city
+	 */
+	public OrOpt(Instance instance, String name, int nbNeighbors) {
+		super(instance, name);
+		m_nbNeighbors = Math.max(1, Math.min(nbNeighbors, instance.getNbCities() - 1));
+		m_firstImprovement = (move, delta) -> {
+			if (delta < 0) {
+				m_improvingMove = move;
+				return false;
+			}
+			return true;
+		};
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	protected void initialize(Solution sol) {
+		m_neighbors = m_instance.getNeighbors(m_nbNeighbors);
+	}
+
+	@Override
+	protected boolean forEachMove(Solution sol, int from, int to, MoveVisitor visitor) {
+		int n = m_instance.getNbCities();
+		if (n < 5) {
+			return true;
+		}
+		for (int i = Math.max(1, from); i < n && i < to; i++) {
+			for (int k = i; k < n && k < i + MAX_SEGMENT_LENGTH; k++) {
+				if (!scanSegment(sol, i, k, visitor)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(Solution sol, long move) {
+		int i = (int) (move >>> 34);
+		int k = i + (int) ((move >>> 1) & 3);
+		int p = (int) ((move >>> 3) & 0x7fffffff);
+		sol.applyOrOpt(i, k, p, (move & 1) != 0);
+	}
+
+	/**
+	 * Local search: applies improving Or-opt moves (the first one found for
+	 * each segment) until no move of the neighborhood improves the solution.
+	 *
+	 * @param sol a feasible solution, it is not modified
+	 * @return a new solution, local optimum for the neighborhood
+	 */
+	public Solution improve(Solution sol) {
+		Solution result = sol.copy();
+		if (m_instance.getNbCities() < 5) {
+			return result;
+		}
+		initialize(result);
+		int n = m_instance.getNbCities();
+		boolean amelioration = true;
+		while (amelioration) {
+			amelioration = false;
+			for (int i = 1; i < n; i++) {
+				for (int k = i; k < n && k < i + MAX_SEGMENT_LENGTH; k++) {
+					if (!scanSegment(result, i, k, m_firstImprovement)) {
+						apply(result, m_improvingMove);
+						amelioration = true;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Looks at the insertions of the segment between positions i and k next
+	 * to the candidates of its ends.
+	 *
+	 * @param sol the explored solution
+	 * @param i first position of the segment
+	 * @param k last position of the segment
+	 * @param visitor receives the moves
+	 * @return false if the scan has been stopped by visitor
+	 */
+	private boolean scanSegment(Solution sol, int i, int k, MoveVisitor visitor) {
+		int n = m_instance.getNbCities();
+		int first = sol.cityAt(i);
+		int last = sol.cityAt(k);
+		int before = sol.cityAt(i - 1);
+		int after = sol.cityAt(k + 1);
+		// Gain of removing the segment, an inserted segment adds at least one edge to a candidate
+		long removeGain = m_instance.distance(before, first) + m_instance.distance(last, after)
+				- m_instance.distance(before, after);
+
+		for (int end = 0; end < 2; end++) {
+			int city = end == 0 ? first : last;
+			int firstCandidate = city * m_nbNeighbors;
+			for (int r = 0; r < m_nbNeighbors; r++) {
+				int candidate = m_neighbors[firstCandidate + r];
+				if (m_instance.distance(city, candidate) >= removeGain) {
+					break;
+				}
+				int position = sol.getPosition(candidate);
+				if (position >= i && position <= k) {
+					continue;
+				}
+				// Insertion after the candidate, then before it
+				for (int side = 0; side < 2; side++) {
+					int p = side == 0 ? position : (position == 0 ? n - 1 : position - 1);
+					if (p >= i - 1 && p <= k) {
+						continue;
+					}
+					for (int reversed = 0; reversed < (i == k ? 1 : 2); reversed++) {
+						long delta = sol.deltaOrOpt(i, k, p, reversed == 1);
+						long move = ((long) i << 34) | ((long) p << 3) | ((k - i) << 1) | reversed;
+						if (!visitor.visit(move, delta)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+}
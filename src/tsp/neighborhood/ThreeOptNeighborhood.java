@@ -0,0 +1,74 @@
+package tsp.neighborhood;
+
+import tsp.Instance;
+import tsp.Solution;
+
+/**
+ * 3-opt neighborhood of {@link Solution#troisOptSwap(Solution, int, int, int)}:
+ * the cities at positions i..k, k+1..j-1 and j are put in the order j,
+ * k+1..j-1, i..k, for every 1 <= i < k < j <= nbCities-1. Each move is
+ * evaluated in O(1) with {@link Solution#deltaTroisOptSwap(int, int, int)}.
+ *
+ * The neighborhood has O(n^3) moves, it is meant for the best improvement
+ * scan of {@link ANeighborhood#bestMove(Solution)}, which splits the
+ * positions i between several threads. A move packs i, k and j on
+ * #POSITION_BITS bits each, so the instance has less than 2^21 cities.
+ */
+public class ThreeOptNeighborhood extends ANeighborhood {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** Number of bits of each position in a move */
+	private static final int POSITION_BITS = 21;
+
+	/** Mask of a position in a move */
+	private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the neighborhood
+	 */
+	public ThreeOptNeighborhood(Instance instance, String name) {
+		super(instance, name);
+		if (instance.getNbCities() > POSITION_MASK) {
+			throw new IllegalArgumentException("Too many cities for the 3-opt neighborhood: " + instance.getNbCities());
+		}
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	protected boolean forEachMove(Solution sol, int from, int to, MoveVisitor visitor) {
+		int n = m_instance.getNbCities();
+		for (int i = Math.max(1, from); i < n - 2 && i < to; i++) {
+			for (int k = i + 1; k < n - 1; k++) {
+				for (int j = k + 1; j < n; j++) {
+					long move = ((long) i << (2 * POSITION_BITS)) | ((long) k << POSITION_BITS) | j;
+					if (!visitor.visit(move, sol.deltaTroisOptSwap(i, k, j))) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(Solution sol, long move) {
+		int i = (int) (move >>> (2 * POSITION_BITS));
+		int k = (int) ((move >>> POSITION_BITS) & POSITION_MASK);
+		int j = (int) (move & POSITION_MASK);
+		sol.applyTroisOptSwap(i, k, j);
+	}
+}
@@ -0,0 +1,54 @@
+package tsp.neighborhood;
+
+import tsp.Instance;
+import tsp.Solution;
+
+/**
+ * 2-opt neighborhood of {@link Solution#optSwap(Solution, int, int)}: the
+ * cities between positions i and k are reversed, for every
+ * 1 <= i < k <= nbCities-1. Each move is evaluated in O(1) with
+ * {@link Solution#deltaTwoOpt(int, int)}.
+ *
+ * The neighborhood has O(n^2) moves and no candidate lists, it is meant for
+ * the best improvement scan of {@link ANeighborhood#bestMove(Solution)},
+ * which splits the positions i between several threads. A move packs i and
+ * k.
+ */
+public class TwoOptNeighborhood extends ANeighborhood {
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Constructor
+	 * @param instance the instance of the problem
+	 * @param name the name of the neighborhood
+	 */
+	public TwoOptNeighborhood(Instance instance, String name) {
+		super(instance, name);
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	@Override
+	protected boolean forEachMove(Solution sol, int from, int to, MoveVisitor visitor) {
+		int n = m_instance.getNbCities();
+		for (int i = Math.max(1, from); i < n - 1 && i < to; i++) {
+			for (int k = i + 1; k < n; k++) {
+				if (!visitor.visit(((long) i << 32) | k, sol.deltaTwoOpt(i, k))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void apply(Solution sol, long move) {
+		sol.applyTwoOpt((int) (move >>> 32), (int) move);
+	}
+}
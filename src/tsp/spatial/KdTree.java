@@ -0,0 +1,393 @@
+package tsp.spatial;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A 2-dimensional k-d tree over the coordinates of the cities.
+ * 
+ * The tree is stored implicitly in the array #m_points: the node of the range
+ * [lo, hi[ is the point at index mid = (lo+hi)/2, its left subtree is the range
+ * [lo, mid[ and its right subtree the range [mid+1, hi[. Each node splits on the
+ * coordinate where its points are the most spread, which suits clustered
+ * instances such as drilling problems.
+ * 
+ * Points can be removed (and put back): each node knows how many points of its
+ * subtree are still present, so that empty subtrees are skipped. This gives
+ * the "nearest unvisited city" query of construction heuristics in O(log n)
+ * amortized time instead of a linear scan.
+ * 
+ * All queries use the euclidean distance between coordinates. Ties are broken
+ * by point number, so results are deterministic. {@link #kNearest} and
+ * {@link #range} can be called by several threads at the same time, the
+ * other methods cannot.
+ *
+ */
+public class KdTree {
+
+	// -----------------------------
+	// ----- ATTRIBUTS -------------
+	// -----------------------------
+
+	/** x coordinates of the points */
+	private final double[] m_x;
+
+	/** y coordinates of the points */
+	private final double[] m_y;
+
+	/** Points in tree order */
+	private final int[] m_points;
+
+	/** #m_splitX[mid] is true if the node mid splits on x, false if it splits on y */
+	private final boolean[] m_splitX;
+
+	/** #m_present[mid] is the number of points of the subtree of node mid that are not removed */
+	private final int[] m_present;
+
+	/** #m_removed[p] is true if the point p has been removed */
+	private final boolean[] m_removed;
+
+	/** #m_index[p] is the index of the point p in #m_points */
+	private final int[] m_index;
+
+	/** Number of points */
+	private final int m_size;
+
+	/** Best point found by the current nearest query */
+	private int m_best;
+
+	/** Squared distance to #m_best */
+	private double m_bestDist;
+
+
+	// -----------------------------
+	// ----- CONSTRUCTOR -----------
+	// -----------------------------
+
+	/**
+	 * Builds the tree in O(n log n). The coordinates arrays are not copied.
+	 * 
+	 * @param x x coordinates of the points
+	 * @param y y coordinates of the points
+	 */
+	public KdTree(double[] x, double[] y) {
+		m_x = x;
+		m_y = y;
+		m_size = x.length;
+		m_points = new int[m_size];
+		m_splitX = new boolean[m_size];
+		m_present = new int[m_size];
+		m_removed = new boolean[m_size];
+		m_index = new int[m_size];
+		for (int p = 0; p < m_size; p++) {
+			m_points[p] = p;
+		}
+		build(0, m_size);
+		for (int k = 0; k < m_size; k++) {
+			m_index[m_points[k]] = k;
+		}
+	}
+
+
+	// -----------------------------
+	// ----- METHODS ---------------
+	// -----------------------------
+
+	/**
+	 * Builds the subtree of the range [lo, hi[.
+	 * @param lo first index
+	 * @param hi last index (excluded)
+	 */
+	private void build(int lo, int hi) {
+		while (hi - lo > 0) {
+			int mid = (lo + hi) >>> 1;
+			double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int k = lo; k < hi; k++) {
+				int p = m_points[k];
+				minX = Math.min(minX, m_x[p]);
+				maxX = Math.max(maxX, m_x[p]);
+				minY = Math.min(minY, m_y[p]);
+				maxY = Math.max(maxY, m_y[p]);
+			}
+			boolean splitX = maxX - minX >= maxY - minY;
+			select(lo, hi - 1, mid, splitX);
+			m_splitX[mid] = splitX;
+			m_present[mid] = hi - lo;
+			// Recurse on the smallest side, loop on the other one
+			if (mid - lo < hi - mid - 1) {
+				build(lo, mid);
+				lo = mid + 1;
+			} else {
+				build(mid + 1, hi);
+				hi = mid;
+			}
+		}
+	}
+
+	/**
+	 * Partially sorts #m_points[lo..hi] so that the k-th element is in place
+	 * (quickselect on the split coordinate, ties broken by point number).
+	 */
+	private void select(int lo, int hi, int k, boolean splitX) {
+		double[] coord = splitX ? m_x : m_y;
+		while (hi > lo) {
+			int pivot = m_points[(lo + hi) >>> 1];
+			double pv = coord[pivot];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (less(coord, m_points[i], pv, pivot)) {
+					i++;
+				}
+				while (less(coord, pivot, coord[m_points[j]], m_points[j])) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = m_points[i];
+					m_points[i] = m_points[j];
+					m_points[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/** @return true if point p comes before the value v of point q on the coordinate */
+	private static boolean less(double[] coord, int p, double v, int q) {
+		return coord[p] < v || (coord[p] == v && p < q);
+	}
+
+	/**
+	 * Removes a point: it will not be returned by {@link #nearest} and
+	 * {@link #range} until it is put back.
+	 * @param p the point
+	 */
+	public void remove(int p) {
+		if (!m_removed[p]) {
+			m_removed[p] = true;
+			updateCounts(m_index[p], -1);
+		}
+	}
+
+	/**
+	 * Puts back a removed point.
+	 * @param p the point
+	 */
+	public void restore(int p) {
+		if (m_removed[p]) {
+			m_removed[p] = false;
+			updateCounts(m_index[p], 1);
+		}
+	}
+
+	/**
+	 * Puts back all the removed points.
+	 */
+	public void restoreAll() {
+		for (int p = 0; p < m_size; p++) {
+			restore(p);
+		}
+	}
+
+	/**
+	 * Adds delta to the counts of the nodes from the root to the node at index target.
+	 */
+	private void updateCounts(int target, int delta) {
+		int lo = 0, hi = m_size;
+		while (hi > lo) {
+			int mid = (lo + hi) >>> 1;
+			m_present[mid] += delta;
+			if (target == mid) {
+				return;
+			} else if (target < mid) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+	}
+
+	/**
+	 * @param p a point
+	 * @return true if the point has been removed
+	 */
+	public boolean isRemoved(int p) {
+		return m_removed[p];
+	}
+
+	/**
+	 * Finds the nearest point that has not been removed.
+	 * 
+	 * @param qx x coordinate of the query
+	 * @param qy y coordinate of the query
+	 * @return the nearest point (the one with the smallest number in case of
+	 *         ties), -1 if all points have been removed
+	 */
+	public int nearest(double qx, double qy) {
+		m_best = -1;
+		m_bestDist = Double.POSITIVE_INFINITY;
+		nearest(0, m_size, qx, qy);
+		return m_best;
+	}
+
+	private void nearest(int lo, int hi, double qx, double qy) {
+		if (hi <= lo) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		if (m_present[mid] == 0) {
+			return;
+		}
+		int p = m_points[mid];
+		if (!m_removed[p]) {
+			double dx = m_x[p] - qx;
+			double dy = m_y[p] - qy;
+			double d = dx * dx + dy * dy;
+			if (d < m_bestDist || (d == m_bestDist && p < m_best)) {
+				m_best = p;
+				m_bestDist = d;
+			}
+		}
+		double diff = m_splitX[mid] ? qx - m_x[p] : qy - m_y[p];
+		if (diff < 0) {
+			nearest(lo, mid, qx, qy);
+			if (diff * diff <= m_bestDist) {
+				nearest(mid + 1, hi, qx, qy);
+			}
+		} else {
+			nearest(mid + 1, hi, qx, qy);
+			if (diff * diff <= m_bestDist) {
+				nearest(lo, mid, qx, qy);
+			}
+		}
+	}
+
+	/**
+	 * Finds the nearest point of point p that has not been removed.
+	 * @param p a point
+	 * @return the nearest point, -1 if all points have been removed
+	 */
+	public int nearest(int p) {
+		return nearest(m_x[p], m_y[p]);
+	}
+
+	/**
+	 * Finds the k nearest points of a point, removed or not (the point itself
+	 * is excluded).
+	 * 
+	 * @param q the query point
+	 * @param k the number of neighbors
+	 * @param result array of size at least k filled with the neighbors, sorted
+	 *        by increasing distance (then by point number)
+	 * @param dist working array of size at least k, filled with the squared distances
+	 * @return the number of neighbors found, min(k, n-1)
+	 */
+	public int kNearest(int q, int k, int[] result, double[] dist) {
+		k = Math.min(k, m_size - 1);
+		int[] size = { 0 };
+		kNearest(0, m_size, q, k, result, dist, size);
+		return size[0];
+	}
+
+	private void kNearest(int lo, int hi, int q, int k, int[] result, double[] dist, int[] size) {
+		if (hi <= lo || k == 0) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int p = m_points[mid];
+		double qx = m_x[q];
+		double qy = m_y[q];
+		if (p != q) {
+			double dx = m_x[p] - qx;
+			double dy = m_y[p] - qy;
+			double d = dx * dx + dy * dy;
+			int n = size[0];
+			if (n < k || d < dist[k - 1] || (d == dist[k - 1] && p < result[k - 1])) {
+				int r = n < k ? n : k - 1;
+				while (r > 0 && (dist[r - 1] > d || (dist[r - 1] == d && result[r - 1] > p))) {
+					dist[r] = dist[r - 1];
+					result[r] = result[r - 1];
+					r--;
+				}
+				dist[r] = d;
+				result[r] = p;
+				if (n < k) {
+					size[0]++;
+				}
+			}
+		}
+		double diff = m_splitX[mid] ? qx - m_x[p] : qy - m_y[p];
+		int firstLo = diff < 0 ? lo : mid + 1;
+		int firstHi = diff < 0 ? mid : hi;
+		kNearest(firstLo, firstHi, q, k, result, dist, size);
+		if (size[0] < k || diff * diff <= dist[k - 1]) {
+			kNearest(diff < 0 ? mid + 1 : lo, diff < 0 ? hi : mid, q, k, result, dist, size);
+		}
+	}
+
+	/**
+	 * Calls action on every point that has not been removed and whose
+	 * euclidean distance to point p is at most radius (p included if it is
+	 * not removed).
+	 * 
+	 * @param p the center
+	 * @param radius the radius
+	 * @param action called with each point found
+	 */
+	public void range(int p, double radius, IntConsumer action) {
+		range(m_x[p], m_y[p], radius, action);
+	}
+
+	/**
+	 * Calls action on every point that has not been removed and whose
+	 * euclidean distance to (qx, qy) is at most radius.
+	 * 
+	 * @param qx x coordinate of the center
+	 * @param qy y coordinate of the center
+	 * @param radius the radius
+	 * @param action called with each point found
+	 */
+	public void range(double qx, double qy, double radius, IntConsumer action) {
+		range(0, m_size, qx, qy, radius * radius, action);
+	}
+
+	private void range(int lo, int hi, double qx, double qy, double radius2, IntConsumer action) {
+		if (hi <= lo) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		if (m_present[mid] == 0) {
+			return;
+		}
+		int p = m_points[mid];
+		double dx = m_x[p] - qx;
+		double dy = m_y[p] - qy;
+		if (!m_removed[p] && dx * dx + dy * dy <= radius2) {
+			action.accept(p);
+		}
+		double diff = m_splitX[mid] ? qx - m_x[p] : qy - m_y[p];
+		if (diff <= 0 || diff * diff <= radius2) {
+			range(lo, mid, qx, qy, radius2, action);
+		}
+		if (diff >= 0 || diff * diff <= radius2) {
+			range(mid + 1, hi, qx, qy, radius2, action);
+		}
+	}
+
+
+	// -----------------------------
+	// ----- GETTERS / SETTERS -----
+	// -----------------------------
+
+	/** @return the number of points of the tree */
+	public int getSize() {
+		return m_size;
+	}
+}